@@ -0,0 +1,172 @@
+package com.example.android.sunshine;
+
+import android.app.Instrumentation;
+import android.content.ContentProviderClient;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.view.View;
+
+import com.example.android.sunshine.data.ForecastListSnapshot;
+import com.example.android.sunshine.data.ForecastSnapshot;
+import com.example.android.sunshine.data.ForecastSnapshotCache;
+import com.example.android.sunshine.data.SunshinePreferences;
+import com.example.android.sunshine.data.WeatherContract;
+import com.example.android.sunshine.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.data.WeatherTestUtils;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the time from launching MainActivity until the first forecast row is laid out, with
+ * and without the snapshot of the top of the list. Results are written to logcat under the
+ * StartupBenchmark tag.
+ * <p/>
+ * The database of the provider is closed before every launch, so the loader has to open it again
+ * like on a cold start. The process itself stays alive, so class loading isn't part of the
+ * numbers. The benchmark uses the real provider on a database file of its own, which holds 14
+ * days from today for the preferred location. The stored forecast of the app isn't touched.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StartupBenchmark {
+
+    private static final String TAG = StartupBenchmark.class.getSimpleName();
+
+    private static final String DATABASE_NAME = "benchmark_startup.db";
+
+    private static final int FORECAST_DAYS = 14;
+
+    private static final int WARMUP_LAUNCHES = 2;
+    private static final int MEASURED_LAUNCHES = 10;
+
+    // Launches that don't show a row within this time fail the benchmark.
+    private static final long FIRST_ROW_TIMEOUT_MILLIS = 10000;
+
+    @Rule
+    public ActivityTestRule<MainActivity> mActivityRule =
+            new ActivityTestRule<>(MainActivity.class, false, false);
+
+    private Instrumentation mInstrumentation;
+    private Context mContext;
+    private ContentResolver mContentResolver;
+
+    @Before
+    public void setUp() {
+        mInstrumentation = InstrumentationRegistry.getInstrumentation();
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContentResolver = mContext.getContentResolver();
+        mContext.deleteDatabase(DATABASE_NAME);
+        WeatherTestUtils.useProviderDatabase(mContext, DATABASE_NAME);
+
+        String locationSetting = SunshinePreferences.getPreferredWeatherLocation(mContext);
+        ContentValues locationValues = new ContentValues();
+        locationValues.put(LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        long locationId = ContentUris.parseId(
+                mContentResolver.insert(LocationEntry.CONTENT_URI, locationValues));
+
+        long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+        mContentResolver.bulkInsert(WeatherEntry.CONTENT_URI,
+                WeatherTestUtils.createForecastValues(locationId, today, FORECAST_DAYS));
+    }
+
+    @After
+    public void tearDown() {
+        ForecastListSnapshot.delete(mContext);
+        WeatherTestUtils.useProviderDatabase(mContext, null);
+        mContext.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void benchmarkTimeToFirstRow() {
+        ForecastSnapshot forecast = ForecastSnapshotCache.get(
+                SunshinePreferences.getPreferredWeatherLocation(mContext));
+        assertNotNull(forecast);
+
+        ForecastListSnapshot.delete(mContext);
+        long withoutSnapshot = measureTimeToFirstRow();
+
+        ForecastListSnapshot.write(mContext, forecast);
+        long withSnapshot = measureTimeToFirstRow();
+
+        Log.i(TAG, String.format("Time to first row, median of %d launches: "
+                        + "%d us without snapshot, %d us with snapshot",
+                MEASURED_LAUNCHES, withoutSnapshot, withSnapshot));
+    }
+
+    /**
+     * Launches MainActivity repeatedly.
+     *
+     * @return Median time to the first row in microseconds.
+     */
+    private long measureTimeToFirstRow() {
+        for (int i = 0; i < WARMUP_LAUNCHES; i++) {
+            launchUntilFirstRow();
+        }
+
+        long[] times = new long[MEASURED_LAUNCHES];
+        for (int i = 0; i < MEASURED_LAUNCHES; i++) {
+            times[i] = launchUntilFirstRow();
+        }
+
+        Arrays.sort(times);
+        return times[MEASURED_LAUNCHES / 2];
+    }
+
+    private long launchUntilFirstRow() {
+        closeDatabase();
+
+        long start = System.nanoTime();
+        MainActivity activity = mActivityRule.launchActivity(null);
+        final RecyclerView recyclerView = activity.findViewById(R.id.rv_forecast);
+
+        final boolean[] shown = new boolean[1];
+        long deadline = SystemClock.uptimeMillis() + FIRST_ROW_TIMEOUT_MILLIS;
+        while (!shown[0] && SystemClock.uptimeMillis() < deadline) {
+            mInstrumentation.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    shown[0] = recyclerView.getVisibility() == View.VISIBLE
+                            && recyclerView.getChildCount() > 0;
+                }
+            });
+        }
+        long elapsed = (System.nanoTime() - start) / 1000;
+
+        mActivityRule.finishActivity();
+        mInstrumentation.waitForIdleSync();
+
+        assertTrue("No forecast row shown", shown[0]);
+        return elapsed;
+    }
+
+    /**
+     * Closes the database of the provider, the next query opens it again.
+     */
+    private void closeDatabase() {
+        ContentProviderClient client = mContentResolver
+                .acquireContentProviderClient(WeatherContract.CONTENT_AUTHORITY);
+        try {
+            client.getLocalContentProvider().shutdown();
+        } finally {
+            client.release();
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.example.android.sunshine.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that superseded weather is archived into monthly partitions and that maintenance drops
+ * and compacts them. Runs on a database file of its own.
+ */
+@RunWith(AndroidJUnit4.class)
+public class WeatherArchiveTest {
+
+    private static final String DATABASE_NAME = "test_archive.db";
+
+    private static final String LOCATION_SETTING = "archive";
+
+    private static final long HOUR_IN_MILLIS = 60 * 60 * 1000;
+
+    private Context mContext;
+    private WeatherDbHelper mHelper;
+    private SQLiteDatabase mDb;
+    private long mLocationId;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(DATABASE_NAME);
+        mHelper = new WeatherDbHelper(mContext, DATABASE_NAME, true);
+        mDb = mHelper.getWritableDatabase();
+
+        ContentValues locationValues = new ContentValues();
+        locationValues.put(LocationEntry.COLUMN_LOCATION_SETTING, LOCATION_SETTING);
+        mLocationId = mDb.insert(LocationEntry.TABLE_NAME, null, locationValues);
+    }
+
+    @After
+    public void tearDown() {
+        mHelper.close();
+        mContext.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void archivesReplacedValuesOnUpdate() {
+        long date = utcDate(2026, Calendar.MARCH, 10);
+        long archivedAt = date - 2 * SunshineDateUtils.DAY_IN_MILLIS;
+
+        assertEquals(WeatherUpsert.INSERTED, upsert(date, 0, archivedAt));
+        // New days don't create partitions.
+        assertEquals(0, DatabaseUtils.queryNumEntries(mDb, WeatherArchive.TABLE_PARTITIONS));
+
+        assertEquals(WeatherUpsert.UNCHANGED, upsert(date, 0, archivedAt));
+        assertEquals(0, DatabaseUtils.queryNumEntries(mDb, WeatherArchive.TABLE_PARTITIONS));
+
+        assertEquals(WeatherUpsert.UPDATED, upsert(date, 1, archivedAt));
+        String partition = WeatherArchive.PARTITION_PREFIX + 202603;
+        assertEquals(1, DatabaseUtils.queryNumEntries(mDb, partition));
+
+        Cursor cursor = mDb.query(partition,
+                new String[] {WeatherArchive.COLUMN_LOCATION_SETTING, WeatherEntry.COLUMN_DATE,
+                        WeatherEntry.COLUMN_WEATHER_ID, WeatherArchive.COLUMN_ARCHIVED_AT},
+                null, null, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(LOCATION_SETTING, cursor.getString(0));
+            assertEquals(date, cursor.getLong(1));
+            // The values stored before the update, not the new ones.
+            assertEquals(800, cursor.getInt(2));
+            assertEquals(archivedAt, cursor.getLong(3));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void archivesExpiredDayOnDelete() {
+        long date = utcDate(2026, Calendar.APRIL, 30);
+        upsert(date, 0, date);
+
+        // The same order as WeatherProvider.delete of a single day.
+        String selection = WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                WeatherEntry.COLUMN_DATE + " = ?";
+        String[] selectionArgs = {Long.toString(mLocationId), Long.toString(date)};
+        WeatherArchive archive = new WeatherArchive(mDb, date + SunshineDateUtils.DAY_IN_MILLIS);
+        try {
+            archive.archiveWhere(selection, selectionArgs);
+        } finally {
+            archive.close();
+        }
+        assertEquals(1, mDb.delete(WeatherEntry.TABLE_NAME, selection, selectionArgs));
+
+        assertEquals(0, DatabaseUtils.queryNumEntries(mDb, WeatherEntry.TABLE_NAME));
+        assertEquals(1, DatabaseUtils.queryNumEntries(mDb,
+                WeatherArchive.PARTITION_PREFIX + 202604));
+    }
+
+    @Test
+    public void dropsPartitionsOlderThanRetention() {
+        archiveTwice(utcDate(2026, Calendar.FEBRUARY, 28));
+        archiveTwice(utcDate(2026, Calendar.MARCH, 1));
+
+        // Three months back from June keeps March onwards.
+        WeatherArchive.maintain(mDb, 3, utcDate(2026, Calendar.JUNE, 15));
+
+        assertFalse(tableExists(WeatherArchive.PARTITION_PREFIX + 202602));
+        assertTrue(tableExists(WeatherArchive.PARTITION_PREFIX + 202603));
+        assertEquals(1, DatabaseUtils.queryNumEntries(mDb, WeatherArchive.TABLE_PARTITIONS));
+    }
+
+    @Test
+    public void compactionKeepsNewestRowPerSiteDateAndLeadDay() {
+        long date = utcDate(2026, Calendar.MAY, 20);
+        long earlyLeadTwo = date - 2 * SunshineDateUtils.DAY_IN_MILLIS - 5 * HOUR_IN_MILLIS;
+        long lateLeadTwo = date - 2 * SunshineDateUtils.DAY_IN_MILLIS - HOUR_IN_MILLIS;
+        long leadFive = date - 5 * SunshineDateUtils.DAY_IN_MILLIS;
+
+        upsert(date, 0, leadFive);
+        upsert(date, 1, leadFive);
+        upsert(date, 2, earlyLeadTwo);
+        upsert(date, 3, lateLeadTwo);
+        String partition = WeatherArchive.PARTITION_PREFIX + 202605;
+        assertEquals(3, DatabaseUtils.queryNumEntries(mDb, partition));
+
+        // May ended more than a month before, it is compacted but kept.
+        WeatherArchive.maintain(mDb, 24, utcDate(2026, Calendar.JULY, 2));
+
+        Cursor cursor = mDb.query(partition, new String[] {WeatherArchive.COLUMN_ARCHIVED_AT},
+                null, null, null, null, WeatherArchive.COLUMN_ARCHIVED_AT);
+        try {
+            assertEquals(2, cursor.getCount());
+            assertTrue(cursor.moveToNext());
+            assertEquals(leadFive, cursor.getLong(0));
+            assertTrue(cursor.moveToNext());
+            assertEquals(lateLeadTwo, cursor.getLong(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void addMonthsCrossesYearBoundary() {
+        assertEquals(202512, WeatherArchive.addMonths(202601, -1));
+        assertEquals(202701, WeatherArchive.addMonths(202612, 1));
+        assertEquals(202602, WeatherArchive.addMonths(202511, 3));
+        assertEquals(202412, WeatherArchive.addMonths(202601, -13));
+        assertEquals(202603, WeatherArchive.addMonths(202603, 0));
+    }
+
+    /**
+     * Writes the weather of a day like a sync does.
+     *
+     * @param index      Selects the values, see {@link WeatherTestUtils#createWeatherValues}.
+     * @param archivedAt Time superseded values are archived at.
+     * @return           Result of {@link WeatherUpsert#upsert}.
+     */
+    private int upsert(long date, int index, long archivedAt) {
+        WeatherArchive archive = new WeatherArchive(mDb, archivedAt);
+        WeatherUpsert upsert = new WeatherUpsert(mDb, archive);
+        try {
+            return upsert.upsert(mLocationId, date,
+                    WeatherTestUtils.createWeatherValues(mLocationId, date, index));
+        } finally {
+            upsert.close();
+            archive.close();
+        }
+    }
+
+    /**
+     * Stores a day and updates it once, which archives it into the partition of its month.
+     */
+    private void archiveTwice(long date) {
+        upsert(date, 0, date);
+        upsert(date, 1, date);
+    }
+
+    private boolean tableExists(String table) {
+        return DatabaseUtils.longForQuery(mDb,
+                "SELECT COUNT(*) FROM sqlite_master WHERE type = 'table' AND name = ?",
+                new String[] {table}) != 0;
+    }
+
+    private static long utcDate(int year, int month, int day) {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.clear();
+        calendar.set(year, month, day);
+        return calendar.getTimeInMillis();
+    }
+}
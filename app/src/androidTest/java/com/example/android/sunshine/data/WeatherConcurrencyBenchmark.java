@@ -0,0 +1,184 @@
+package com.example.android.sunshine.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the latency of the forecast list query while a large bulk insert holds the write
+ * transaction, with the rollback journal and with write-ahead logging. Results are written to
+ * logcat under the WeatherConcurrencyBenchmark tag.
+ * <p/>
+ * Every journal mode gets a database file of its own, the database of the app isn't touched.
+ */
+@RunWith(AndroidJUnit4.class)
+public class WeatherConcurrencyBenchmark {
+
+    private static final String TAG = WeatherConcurrencyBenchmark.class.getSimpleName();
+
+    private static final String ROLLBACK_DATABASE_NAME = "benchmark_rollback.db";
+    private static final String WAL_DATABASE_NAME = "benchmark_wal.db";
+
+    private static final int FORECAST_DAYS = 14;
+    private static final int BULK_INSERT_ROWS = 100000;
+
+    // Pause between two queries of the reader, roughly a frame.
+    private static final long QUERY_INTERVAL_MILLIS = 16;
+
+    private static final String[] LIST_PROJECTION = {
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP
+    };
+
+    private static final String DISPLAYED_LOCATION = "displayed";
+    private static final String SYNCED_LOCATION = "synced";
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        deleteDatabases();
+    }
+
+    @After
+    public void tearDown() {
+        deleteDatabases();
+    }
+
+    @Test
+    public void benchmarkQueryDuringBulkInsert() throws Exception {
+        long[] rollback = measureQueriesDuringBulkInsert(ROLLBACK_DATABASE_NAME, false);
+        long[] wal = measureQueriesDuringBulkInsert(WAL_DATABASE_NAME, true);
+
+        Log.i(TAG, String.format("List query during bulkInsert of %d rows, "
+                        + "rollback journal: %d queries, median %d us, p95 %d us, max %d us",
+                BULK_INSERT_ROWS, rollback.length, percentile(rollback, 50),
+                percentile(rollback, 95), rollback[rollback.length - 1]));
+        Log.i(TAG, String.format("List query during bulkInsert of %d rows, "
+                        + "write-ahead log: %d queries, median %d us, p95 %d us, max %d us",
+                BULK_INSERT_ROWS, wal.length, percentile(wal, 50),
+                percentile(wal, 95), wal[wal.length - 1]));
+    }
+
+    /**
+     * Queries the forecast list from one thread while another one inserts rows of a second
+     * location in a single transaction, like a sync does.
+     *
+     * @return Sorted query latencies in microseconds.
+     */
+    private long[] measureQueriesDuringBulkInsert(String name, boolean writeAheadLogging)
+            throws Exception {
+        WeatherDbHelper helper = new WeatherDbHelper(mContext, name, writeAheadLogging);
+        final SQLiteDatabase db = helper.getWritableDatabase();
+        try {
+            long displayedId = insertLocation(db, DISPLAYED_LOCATION);
+            final long syncedId = insertLocation(db, SYNCED_LOCATION);
+            long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+            insertWeather(db, displayedId, today, FORECAST_DAYS);
+
+            final CountDownLatch transactionStarted = new CountDownLatch(1);
+            final boolean[] writing = {true};
+            Thread writer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    db.beginTransaction();
+                    try {
+                        transactionStarted.countDown();
+                        insertWeather(db, syncedId, 0, BULK_INSERT_ROWS);
+                        db.setTransactionSuccessful();
+                    } finally {
+                        db.endTransaction();
+                        synchronized (writing) {
+                            writing[0] = false;
+                        }
+                    }
+                }
+            });
+            writer.start();
+            transactionStarted.await();
+
+            String selection = WeatherEntry.COLUMN_DATE + " >= " + today + " AND " +
+                    WeatherEntry.COLUMN_LOC_KEY + " = " + displayedId;
+            long[] latencies = new long[64];
+            int count = 0;
+            while (true) {
+                synchronized (writing) {
+                    if (!writing[0]) break;
+                }
+
+                long start = System.nanoTime();
+                Cursor cursor = db.query(WeatherEntry.TABLE_NAME, LIST_PROJECTION, selection,
+                        null, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+                try {
+                    assertEquals(FORECAST_DAYS, cursor.getCount());
+                } finally {
+                    cursor.close();
+                }
+
+                if (count == latencies.length) {
+                    latencies = Arrays.copyOf(latencies, count * 2);
+                }
+                latencies[count++] = (System.nanoTime() - start) / 1000;
+                Thread.sleep(QUERY_INTERVAL_MILLIS);
+            }
+            writer.join();
+
+            assertTrue("No query ran during the bulk insert", count > 0);
+            latencies = Arrays.copyOf(latencies, count);
+            Arrays.sort(latencies);
+            return latencies;
+        } finally {
+            helper.close();
+        }
+    }
+
+    private static long insertLocation(SQLiteDatabase db, String locationSetting) {
+        ContentValues values = new ContentValues();
+        values.put(LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        return db.insert(LocationEntry.TABLE_NAME, null, values);
+    }
+
+    /**
+     * Inserts the fixture of {@link WeatherTestUtils} for consecutive days.
+     */
+    private static void insertWeather(SQLiteDatabase db, long locationId, long firstDate,
+                                      int rowCount) {
+        for (int i = 0; i < rowCount; i++) {
+            long date = firstDate + SunshineDateUtils.DAY_IN_MILLIS * i;
+            db.insertOrThrow(WeatherEntry.TABLE_NAME, null,
+                    WeatherTestUtils.createWeatherValues(locationId, date, i));
+        }
+    }
+
+    private static long percentile(long[] sortedValues, int percent) {
+        int rank = (sortedValues.length * percent + 99) / 100;
+        return sortedValues[Math.max(rank, 1) - 1];
+    }
+
+    private void deleteDatabases() {
+        mContext.deleteDatabase(ROLLBACK_DATABASE_NAME);
+        mContext.deleteDatabase(WAL_DATABASE_NAME);
+    }
+}
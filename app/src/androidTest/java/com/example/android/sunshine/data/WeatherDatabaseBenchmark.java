@@ -0,0 +1,80 @@
+package com.example.android.sunshine.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Measures how fast weather can be written through WeatherProvider. Results are written to logcat
+ * under the WeatherDatabaseBenchmark tag.
+ * <p/>
+ * The benchmark uses the real provider on a database file of its own, the stored forecast of the
+ * app isn't touched.
+ */
+@RunWith(AndroidJUnit4.class)
+public class WeatherDatabaseBenchmark {
+
+    private static final String TAG = WeatherDatabaseBenchmark.class.getSimpleName();
+
+    private static final String DATABASE_NAME = "benchmark_provider.db";
+
+    private static final String BENCHMARK_LOCATION = "benchmark";
+
+    private Context mContext;
+    private ContentResolver mContentResolver;
+    private long mLocationId;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContentResolver = mContext.getContentResolver();
+        mContext.deleteDatabase(DATABASE_NAME);
+        WeatherTestUtils.useProviderDatabase(mContext, DATABASE_NAME);
+
+        ContentValues locationValues = new ContentValues();
+        locationValues.put(LocationEntry.COLUMN_LOCATION_SETTING, BENCHMARK_LOCATION);
+        mLocationId = ContentUris.parseId(
+                mContentResolver.insert(LocationEntry.CONTENT_URI, locationValues));
+    }
+
+    @After
+    public void tearDown() {
+        WeatherTestUtils.useProviderDatabase(mContext, null);
+        mContext.deleteDatabase(DATABASE_NAME);
+    }
+
+    /**
+     * Rows per second of bulkInsert for a regular sync, a large sync and a historical backfill.
+     */
+    @Test
+    public void benchmarkBulkInsert() {
+        for (int rowCount : new int[] {14, 1000, 100000}) {
+            ContentValues[] values =
+                    WeatherTestUtils.createForecastValues(mLocationId, 0, rowCount);
+            mContentResolver.delete(WeatherEntry.CONTENT_URI, null, null);
+
+            long start = SystemClock.elapsedRealtime();
+            int rowsInserted = mContentResolver.bulkInsert(WeatherEntry.CONTENT_URI, values);
+            long elapsed = Math.max(1, SystemClock.elapsedRealtime() - start);
+
+            assertEquals(rowCount, rowsInserted);
+            Log.i(TAG, String.format("bulkInsert %d rows: %d ms, %d rows/sec",
+                    rowCount, elapsed, rowCount * 1000L / elapsed));
+        }
+    }
+}
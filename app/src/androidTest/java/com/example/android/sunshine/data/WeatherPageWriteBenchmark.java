@@ -0,0 +1,225 @@
+package com.example.android.sunshine.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the pages a sync writes, with the weather table of version 6, which replaces every
+ * stored day on conflict, and with the in-place updates of {@link WeatherUpsert}. Results are
+ * written to logcat under the WeatherPageWriteBenchmark tag.
+ * <p/>
+ * Pages are counted as frames appended to the write-ahead log: automatic checkpoints are turned
+ * off and the log is checkpointed before every sync, so the log of a sync starts empty. Both
+ * databases archive superseded days like the provider does.
+ * <p/>
+ * Like SunshineSyncTask, every sync after the first one only writes the days that changed, so
+ * the numbers compare replacing a row with updating it in place.
+ */
+@RunWith(AndroidJUnit4.class)
+public class WeatherPageWriteBenchmark {
+
+    private static final String TAG = WeatherPageWriteBenchmark.class.getSimpleName();
+
+    private static final String REPLACE_DATABASE_NAME = "benchmark_replace.db";
+    private static final String UPSERT_DATABASE_NAME = "benchmark_upsert.db";
+
+    private static final int LOCATIONS = 5;
+    private static final int FORECAST_DAYS = 16;
+    private static final int SYNCS = 20;
+
+    // Days at the start of the forecast that change on every sync, the others come back the same
+    // and aren't written.
+    private static final int CHANGED_DAYS = 3;
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        deleteDatabases();
+    }
+
+    @After
+    public void tearDown() {
+        deleteDatabases();
+    }
+
+    @Test
+    public void benchmarkPagesPerSync() {
+        SQLiteDatabase replaceDb = openReplaceDatabase();
+        long replacePages;
+        try {
+            replacePages = measurePagesPerSync(replaceDb, false);
+        } finally {
+            replaceDb.close();
+        }
+
+        WeatherDbHelper helper = new WeatherDbHelper(mContext, UPSERT_DATABASE_NAME, true);
+        long upsertPages;
+        try {
+            upsertPages = measurePagesPerSync(helper.getWritableDatabase(), true);
+        } finally {
+            helper.close();
+        }
+
+        Log.i(TAG, String.format("Pages written per sync of %d locations x %d days, "
+                        + "%d days changed: replace on conflict %d, update in place %d",
+                LOCATIONS, FORECAST_DAYS, CHANGED_DAYS, replacePages, upsertPages));
+    }
+
+    /**
+     * Syncs every location once to fill the database, then measures {@link #SYNCS} more syncs.
+     * Every location is written in a transaction of its own, like SunshineSyncTask does.
+     *
+     * @return Average number of pages written by one sync.
+     */
+    private long measurePagesPerSync(SQLiteDatabase db, boolean upsert) {
+        DatabaseUtils.longForQuery(db, "PRAGMA wal_autocheckpoint = 0;", null);
+
+        long[] locationIds = new long[LOCATIONS];
+        for (int i = 0; i < LOCATIONS; i++) {
+            ContentValues values = new ContentValues();
+            values.put(LocationEntry.COLUMN_LOCATION_SETTING, "location " + i);
+            locationIds[i] = db.insert(LocationEntry.TABLE_NAME, null, values);
+        }
+        long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+        sync(db, upsert, locationIds, today, 0, FORECAST_DAYS);
+
+        long totalPages = 0;
+        checkpoint(db);
+        for (int sync = 1; sync <= SYNCS; sync++) {
+            sync(db, upsert, locationIds, today, sync, CHANGED_DAYS);
+            totalPages += checkpoint(db);
+        }
+
+        assertEquals(LOCATIONS * FORECAST_DAYS,
+                DatabaseUtils.queryNumEntries(db, WeatherEntry.TABLE_NAME));
+        assertTrue("No pages were written", totalPages > 0);
+        return totalPages / SYNCS;
+    }
+
+    /**
+     * Writes the first days of the forecast of every location.
+     *
+     * @param sync Number of the sync, the changed days get new values in every one.
+     * @param days Number of days written, starting today.
+     */
+    private static void sync(SQLiteDatabase db, boolean upsert, long[] locationIds, long today,
+                             int sync, int days) {
+        for (long locationId : locationIds) {
+            db.beginTransaction();
+            WeatherArchive archive = new WeatherArchive(db, System.currentTimeMillis());
+            WeatherUpsert weatherUpsert = upsert ? new WeatherUpsert(db, archive) : null;
+            try {
+                for (int day = 0; day < days; day++) {
+                    long date = today + SunshineDateUtils.DAY_IN_MILLIS * day;
+                    // Changed days get values of their own in every sync.
+                    int index = day < CHANGED_DAYS ? day + sync * FORECAST_DAYS : day;
+                    ContentValues values =
+                            WeatherTestUtils.createWeatherValues(locationId, date, index);
+
+                    if (upsert) {
+                        weatherUpsert.upsert(locationId, date, values);
+                    } else {
+                        // How the provider wrote a day before version 7, the insert replaces
+                        // the stored row through the conflict clause of the table. Days are only
+                        // stored after the first sync.
+                        if (sync > 0) {
+                            archive.archiveDay(locationId, date);
+                        }
+                        db.insertOrThrow(WeatherEntry.TABLE_NAME, null, values);
+                    }
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                if (weatherUpsert != null) {
+                    weatherUpsert.close();
+                }
+                archive.close();
+                db.endTransaction();
+            }
+        }
+    }
+
+    /**
+     * Checkpoints the whole log, so the next transaction starts writing it from the beginning.
+     *
+     * @return Number of frames the log held, the pages written since the last checkpoint.
+     */
+    private static long checkpoint(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("PRAGMA wal_checkpoint;", null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals("Checkpoint didn't complete", 0, cursor.getInt(0));
+            return cursor.getLong(1);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Opens a database with the tables of version 6, before weather was updated in place.
+     */
+    private SQLiteDatabase openReplaceDatabase() {
+        File file = mContext.getDatabasePath(REPLACE_DATABASE_NAME);
+        // SQLiteOpenHelper creates the directory, opening the file directly doesn't.
+        file.getParentFile().mkdirs();
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(file, null);
+        db.enableWriteAheadLogging();
+        db.execSQL("PRAGMA synchronous = NORMAL;");
+
+        db.execSQL("CREATE TABLE " + LocationEntry.TABLE_NAME + " (" +
+                LocationEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                LocationEntry.COLUMN_LOCATION_SETTING + " TEXT NOT NULL, " +
+                LocationEntry.COLUMN_COORD_LAT + " REAL, " +
+                LocationEntry.COLUMN_COORD_LONG + " REAL, " +
+                " UNIQUE (" + LocationEntry.COLUMN_LOCATION_SETTING + ") ON CONFLICT IGNORE);");
+        db.execSQL("CREATE TABLE " + WeatherEntry.TABLE_NAME + " (" +
+                WeatherEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+                WeatherEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL REFERENCES " +
+                LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + ") ON DELETE CASCADE, " +
+                WeatherEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
+                WeatherEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL, " +
+                WeatherEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
+                WeatherEntry.COLUMN_MAX_TEMP + " REAL NOT NULL, " +
+                WeatherEntry.COLUMN_HUMIDITY + " REAL NOT NULL, " +
+                WeatherEntry.COLUMN_PRESSURE + " REAL NOT NULL, " +
+                WeatherEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, " +
+                WeatherEntry.COLUMN_DEGREES + " REAL NOT NULL, " +
+                " UNIQUE (" + WeatherEntry.COLUMN_LOC_KEY + ", " + WeatherEntry.COLUMN_DATE +
+                ") ON CONFLICT REPLACE);");
+        db.execSQL("CREATE INDEX weather_list_index ON " + WeatherEntry.TABLE_NAME + " (" +
+                WeatherEntry.COLUMN_LOC_KEY + ", " +
+                WeatherEntry.COLUMN_DATE + ", " +
+                WeatherEntry.COLUMN_MAX_TEMP + ", " +
+                WeatherEntry.COLUMN_MIN_TEMP + ", " +
+                WeatherEntry.COLUMN_WEATHER_ID + ");");
+        WeatherArchive.createRegistry(db);
+        return db;
+    }
+
+    private void deleteDatabases() {
+        mContext.deleteDatabase(REPLACE_DATABASE_NAME);
+        mContext.deleteDatabase(UPSERT_DATABASE_NAME);
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.android.sunshine.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.RemoteException;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that queries inside a batch see its writes and that a batch that fails leaves no
+ * uncommitted results in the query cache. Runs the provider on a database file of its own.
+ */
+@RunWith(AndroidJUnit4.class)
+public class WeatherProviderBatchTest {
+
+    private static final String DATABASE_NAME = "test_provider_batch.db";
+
+    private static final String LOCATION_SETTING = "batch";
+
+    private Context mContext;
+    private ContentResolver mContentResolver;
+    private Uri mDateUri;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContentResolver = mContext.getContentResolver();
+        mContext.deleteDatabase(DATABASE_NAME);
+        WeatherTestUtils.useProviderDatabase(mContext, DATABASE_NAME);
+
+        ContentValues locationValues = new ContentValues();
+        locationValues.put(LocationEntry.COLUMN_LOCATION_SETTING, LOCATION_SETTING);
+        Uri locationUri = mContentResolver.insert(LocationEntry.CONTENT_URI, locationValues);
+        assertNotNull(locationUri);
+        long locationId = ContentUris.parseId(locationUri);
+
+        long date = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+        mDateUri = mContentResolver.insert(WeatherEntry.CONTENT_URI,
+                WeatherTestUtils.createWeatherValues(locationId, date, 0));
+        assertNotNull(mDateUri);
+    }
+
+    @After
+    public void tearDown() {
+        WeatherTestUtils.useProviderDatabase(mContext, null);
+        mContext.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void failedBatchLeavesCommittedResults() throws RemoteException {
+        ContentValues updateValues = new ContentValues();
+        updateValues.put(WeatherEntry.COLUMN_WEATHER_ID, 801);
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newUpdate(mDateUri)
+                .withValues(updateValues)
+                .build());
+        // Sees the update of the batch before it commits.
+        operations.add(ContentProviderOperation.newAssertQuery(mDateUri)
+                .withValues(updateValues)
+                .build());
+        // A single day is stored, the batch fails here and is rolled back.
+        operations.add(ContentProviderOperation.newAssertQuery(mDateUri)
+                .withExpectedCount(2)
+                .build());
+
+        try {
+            mContentResolver.applyBatch(WeatherContract.CONTENT_AUTHORITY, operations);
+            fail("The batch should have failed on its last operation");
+        } catch (OperationApplicationException e) {
+            // Expected.
+        }
+
+        // The result of the query that saw the rolled back update wasn't cached.
+        assertEquals(800, queryWeatherId());
+    }
+
+    private int queryWeatherId() {
+        Cursor cursor = mContentResolver.query(mDateUri,
+                new String[] {WeatherEntry.COLUMN_WEATHER_ID}, null, null, null);
+        assertNotNull(cursor);
+        try {
+            assertEquals(1, cursor.getCount());
+            assertTrue(cursor.moveToFirst());
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
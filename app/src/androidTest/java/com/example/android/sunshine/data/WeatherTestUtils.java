@@ -0,0 +1,75 @@
+package com.example.android.sunshine.data;
+
+import android.content.ContentProviderClient;
+import android.content.ContentValues;
+import android.content.Context;
+
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+/**
+ * Weather fixtures and database helpers shared by the tests and benchmarks.
+ */
+public final class WeatherTestUtils {
+
+    private WeatherTestUtils() {
+    }
+
+    /**
+     * Creates the weather of one day. Values cycle with the index, so rows of different indexes
+     * differ in most columns.
+     *
+     * @param locationId Location the row belongs to.
+     * @param date       Normalized UTC date of the day.
+     * @param index      Selects the values of the row.
+     * @return           A row ready for insert.
+     */
+    public static ContentValues createWeatherValues(long locationId, long date, int index) {
+        ContentValues weatherValues = new ContentValues();
+        weatherValues.put(WeatherEntry.COLUMN_LOC_KEY, locationId);
+        weatherValues.put(WeatherEntry.COLUMN_DATE, date);
+        weatherValues.put(WeatherEntry.COLUMN_WEATHER_ID, 800 + index % 5);
+        weatherValues.put(WeatherEntry.COLUMN_MIN_TEMP, 10.0 + index % 7);
+        weatherValues.put(WeatherEntry.COLUMN_MAX_TEMP, 20.0 + index % 7);
+        weatherValues.put(WeatherEntry.COLUMN_HUMIDITY, 50 + index % 40);
+        weatherValues.put(WeatherEntry.COLUMN_PRESSURE, 1000.0 + index % 30);
+        weatherValues.put(WeatherEntry.COLUMN_WIND_SPEED, 1.0 + index % 10);
+        weatherValues.put(WeatherEntry.COLUMN_DEGREES, (double) (index * 15 % 360));
+        return weatherValues;
+    }
+
+    /**
+     * Creates weather rows for consecutive days.
+     *
+     * @param locationId Location the rows belong to.
+     * @param firstDate  Normalized UTC date of the first row.
+     * @param rowCount   Number of rows to create.
+     * @return           Rows ready for bulkInsert.
+     */
+    public static ContentValues[] createForecastValues(long locationId, long firstDate,
+                                                       int rowCount) {
+        ContentValues[] values = new ContentValues[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+            values[i] = createWeatherValues(locationId,
+                    firstDate + SunshineDateUtils.DAY_IN_MILLIS * i, i);
+        }
+        return values;
+    }
+
+    /**
+     * Points the weather provider at a database file of its own, see
+     * {@link WeatherProvider#useDatabase}.
+     *
+     * @param context Used to reach the provider.
+     * @param name    File name of the database, null to switch back to the database of the app.
+     */
+    public static void useProviderDatabase(Context context, String name) {
+        ContentProviderClient client = context.getContentResolver()
+                .acquireContentProviderClient(WeatherContract.CONTENT_AUTHORITY);
+        try {
+            ((WeatherProvider) client.getLocalContentProvider()).useDatabase(name);
+        } finally {
+            client.release();
+        }
+    }
+}
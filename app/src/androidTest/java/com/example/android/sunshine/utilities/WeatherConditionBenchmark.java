@@ -0,0 +1,413 @@
+package com.example.android.sunshine.utilities;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.R;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the table lookup of weather conditions in SunshineWeatherUtils with the if/switch
+ * ladders it replaced, which are copied below. Every id from 200 to 962 must map to the same
+ * description and icons. Timings are written to logcat under the WeatherConditionBenchmark tag.
+ * <p/>
+ * Each measurement runs warm-up rounds first and reports the average time of one lookup. Icons
+ * are only timed for known ids, unknown ones are logged as errors by both versions.
+ */
+@RunWith(AndroidJUnit4.class)
+public class WeatherConditionBenchmark {
+
+    private static final String TAG = WeatherConditionBenchmark.class.getSimpleName();
+
+    private static final int MIN_WEATHER_ID = 200;
+    private static final int MAX_WEATHER_ID = 962;
+
+    private static final int WARMUP_ROUNDS = 200;
+    private static final int MEASURED_ROUNDS = 2000;
+
+    private Context mContext;
+
+    // Result of the last round, read so the lookups can't be optimized away.
+    private int mSink;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+    }
+
+    @Test
+    public void tableMatchesLegacyMapping() {
+        for (int weatherId = MIN_WEATHER_ID; weatherId <= MAX_WEATHER_ID; weatherId++) {
+            assertEquals("Description of " + weatherId,
+                    legacyGetStringForWeatherCondition(mContext, weatherId),
+                    SunshineWeatherUtils.getStringForWeatherCondition(mContext, weatherId));
+
+            assertEquals("Small art of " + weatherId,
+                    legacyGetSmallArtResourceIdForWeatherCondition(weatherId),
+                    SunshineWeatherUtils.getSmallArtResourceIdForWeatherCondition(weatherId));
+            assertEquals("Large art of " + weatherId,
+                    legacyGetLargeArtResourceIdForWeatherCondition(weatherId),
+                    SunshineWeatherUtils.getLargeArtResourceIdForWeatherCondition(weatherId));
+        }
+    }
+
+    @Test
+    public void benchmarkDescriptions() {
+        int[] weatherIds = new int[MAX_WEATHER_ID - MIN_WEATHER_ID + 1];
+        for (int i = 0; i < weatherIds.length; i++) {
+            weatherIds[i] = MIN_WEATHER_ID + i;
+        }
+
+        long legacyNanos = measure(weatherIds, new Lookup() {
+            @Override
+            public int lookup(int weatherId) {
+                return legacyGetStringForWeatherCondition(mContext, weatherId).length();
+            }
+        });
+        long tableNanos = measure(weatherIds, new Lookup() {
+            @Override
+            public int lookup(int weatherId) {
+                return SunshineWeatherUtils
+                        .getStringForWeatherCondition(mContext, weatherId).length();
+            }
+        });
+
+        report("getStringForWeatherCondition", weatherIds.length, legacyNanos, tableNanos);
+    }
+
+    @Test
+    public void benchmarkArt() {
+        List<Integer> knownIds = new ArrayList<>();
+        for (int weatherId = MIN_WEATHER_ID; weatherId <= MAX_WEATHER_ID; weatherId++) {
+            if (isKnownArt(weatherId)) knownIds.add(weatherId);
+        }
+        int[] weatherIds = new int[knownIds.size()];
+        for (int i = 0; i < weatherIds.length; i++) {
+            weatherIds[i] = knownIds.get(i);
+        }
+
+        long legacyNanos = measure(weatherIds, new Lookup() {
+            @Override
+            public int lookup(int weatherId) {
+                return legacyGetSmallArtResourceIdForWeatherCondition(weatherId)
+                        ^ legacyGetLargeArtResourceIdForWeatherCondition(weatherId);
+            }
+        });
+        long tableNanos = measure(weatherIds, new Lookup() {
+            @Override
+            public int lookup(int weatherId) {
+                return SunshineWeatherUtils.getSmallArtResourceIdForWeatherCondition(weatherId)
+                        ^ SunshineWeatherUtils.getLargeArtResourceIdForWeatherCondition(weatherId);
+            }
+        });
+
+        report("small and large art", weatherIds.length, legacyNanos, tableNanos);
+    }
+
+    private interface Lookup {
+        int lookup(int weatherId);
+    }
+
+    /**
+     * Runs the lookup over all ids, WARMUP_ROUNDS times untimed and MEASURED_ROUNDS times timed.
+     *
+     * @return Total time of the measured rounds in nanoseconds.
+     */
+    private long measure(int[] weatherIds, Lookup lookup) {
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            for (int weatherId : weatherIds) {
+                mSink += lookup.lookup(weatherId);
+            }
+        }
+
+        long start = System.nanoTime();
+        for (int round = 0; round < MEASURED_ROUNDS; round++) {
+            for (int weatherId : weatherIds) {
+                mSink += lookup.lookup(weatherId);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private void report(String name, int idCount, long legacyNanos, long tableNanos) {
+        long lookups = (long) idCount * MEASURED_ROUNDS;
+        Log.i(TAG, String.format("%s over %d ids: legacy %.1f ns/op, table %.1f ns/op (sink %d)",
+                name, idCount, (double) legacyNanos / lookups, (double) tableNanos / lookups,
+                mSink));
+    }
+
+    /**
+     * True if the legacy ladders have an icon for the id, they fall back to storm otherwise.
+     */
+    private static boolean isKnownArt(int weatherId) {
+        return (weatherId >= 200 && weatherId <= 232)
+                || (weatherId >= 300 && weatherId <= 321)
+                || (weatherId >= 500 && weatherId <= 504)
+                || weatherId == 511
+                || (weatherId >= 520 && weatherId <= 531)
+                || (weatherId >= 600 && weatherId <= 622)
+                || (weatherId >= 701 && weatherId <= 761)
+                || weatherId == 771 || weatherId == 781
+                || (weatherId >= 800 && weatherId <= 804)
+                || (weatherId >= 900 && weatherId <= 906)
+                || (weatherId >= 951 && weatherId <= 962);
+    }
+
+    /*
+     * The mapping before it was table driven, kept to compare against.
+     */
+    private static String legacyGetStringForWeatherCondition(Context context, int weatherId) {
+        int stringId;
+        if (weatherId >= 200 && weatherId <= 232) {
+            stringId = R.string.condition_2xx;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            stringId = R.string.condition_3xx;
+        } else switch (weatherId) {
+            case 500:
+                stringId = R.string.condition_500;
+                break;
+            case 501:
+                stringId = R.string.condition_501;
+                break;
+            case 502:
+                stringId = R.string.condition_502;
+                break;
+            case 503:
+                stringId = R.string.condition_503;
+                break;
+            case 504:
+                stringId = R.string.condition_504;
+                break;
+            case 511:
+                stringId = R.string.condition_511;
+                break;
+            case 520:
+                stringId = R.string.condition_520;
+                break;
+            case 531:
+                stringId = R.string.condition_531;
+                break;
+            case 600:
+                stringId = R.string.condition_600;
+                break;
+            case 601:
+                stringId = R.string.condition_601;
+                break;
+            case 602:
+                stringId = R.string.condition_602;
+                break;
+            case 611:
+                stringId = R.string.condition_611;
+                break;
+            case 612:
+                stringId = R.string.condition_612;
+                break;
+            case 615:
+                stringId = R.string.condition_615;
+                break;
+            case 616:
+                stringId = R.string.condition_616;
+                break;
+            case 620:
+                stringId = R.string.condition_620;
+                break;
+            case 621:
+                stringId = R.string.condition_621;
+                break;
+            case 622:
+                stringId = R.string.condition_622;
+                break;
+            case 701:
+                stringId = R.string.condition_701;
+                break;
+            case 711:
+                stringId = R.string.condition_711;
+                break;
+            case 721:
+                stringId = R.string.condition_721;
+                break;
+            case 731:
+                stringId = R.string.condition_731;
+                break;
+            case 741:
+                stringId = R.string.condition_741;
+                break;
+            case 751:
+                stringId = R.string.condition_751;
+                break;
+            case 761:
+                stringId = R.string.condition_761;
+                break;
+            case 762:
+                stringId = R.string.condition_762;
+                break;
+            case 771:
+                stringId = R.string.condition_771;
+                break;
+            case 781:
+                stringId = R.string.condition_781;
+                break;
+            case 800:
+                stringId = R.string.condition_800;
+                break;
+            case 801:
+                stringId = R.string.condition_801;
+                break;
+            case 802:
+                stringId = R.string.condition_802;
+                break;
+            case 803:
+                stringId = R.string.condition_803;
+                break;
+            case 804:
+                stringId = R.string.condition_804;
+                break;
+            case 900:
+                stringId = R.string.condition_900;
+                break;
+            case 901:
+                stringId = R.string.condition_901;
+                break;
+            case 902:
+                stringId = R.string.condition_902;
+                break;
+            case 903:
+                stringId = R.string.condition_903;
+                break;
+            case 904:
+                stringId = R.string.condition_904;
+                break;
+            case 905:
+                stringId = R.string.condition_905;
+                break;
+            case 906:
+                stringId = R.string.condition_906;
+                break;
+            case 951:
+                stringId = R.string.condition_951;
+                break;
+            case 952:
+                stringId = R.string.condition_952;
+                break;
+            case 953:
+                stringId = R.string.condition_953;
+                break;
+            case 954:
+                stringId = R.string.condition_954;
+                break;
+            case 955:
+                stringId = R.string.condition_955;
+                break;
+            case 956:
+                stringId = R.string.condition_956;
+                break;
+            case 957:
+                stringId = R.string.condition_957;
+                break;
+            case 958:
+                stringId = R.string.condition_958;
+                break;
+            case 959:
+                stringId = R.string.condition_959;
+                break;
+            case 960:
+                stringId = R.string.condition_960;
+                break;
+            case 961:
+                stringId = R.string.condition_961;
+                break;
+            case 962:
+                stringId = R.string.condition_962;
+                break;
+            default:
+                return context.getString(R.string.condition_unknown, weatherId);
+        }
+        return context.getString(stringId);
+    }
+
+    private static int legacyGetSmallArtResourceIdForWeatherCondition(int weatherId) {
+        /*
+         * Based on weather code data found at:
+         * See http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+         */
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.ic_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.ic_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.ic_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.ic_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.ic_fog;
+        } else if (weatherId == 761 || weatherId == 771 || weatherId == 781) {
+            return R.drawable.ic_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.ic_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.ic_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.ic_cloudy;
+        } else if (weatherId >= 900 && weatherId <= 906) {
+            return R.drawable.ic_storm;
+        } else if (weatherId >= 958 && weatherId <= 962) {
+            return R.drawable.ic_storm;
+        } else if (weatherId >= 951 && weatherId <= 957) {
+            return R.drawable.ic_clear;
+        }
+
+        return R.drawable.ic_storm;
+    }
+
+    private static int legacyGetLargeArtResourceIdForWeatherCondition(int weatherId) {
+        /*
+         * Based on weather code data found at:
+         * http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+         */
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.art_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.art_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.art_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.art_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.art_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.art_snow;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.art_fog;
+        } else if (weatherId == 761 || weatherId == 771 || weatherId == 781) {
+            return R.drawable.art_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.art_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.art_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.art_clouds;
+        } else if (weatherId >= 900 && weatherId <= 906) {
+            return R.drawable.art_storm;
+        } else if (weatherId >= 958 && weatherId <= 962) {
+            return R.drawable.art_storm;
+        } else if (weatherId >= 951 && weatherId <= 957) {
+            return R.drawable.art_clear;
+        }
+
+        return R.drawable.art_storm;
+    }
+}
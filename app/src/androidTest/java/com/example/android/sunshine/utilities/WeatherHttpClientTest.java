@@ -0,0 +1,153 @@
+package com.example.android.sunshine.utilities;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that WeatherHttpClient reuses connections. Requests go to a minimal keep-alive HTTP
+ * server on the device that counts the connections it accepts.
+ */
+@RunWith(AndroidJUnit4.class)
+public class WeatherHttpClientTest {
+
+    private static final String RESPONSE_BODY = "{\"cod\":\"200\",\"list\":[]}";
+
+    private static final int REQUEST_COUNT = 3;
+
+    private final AtomicInteger mConnectionCount = new AtomicInteger();
+    private final AtomicInteger mRequestCount = new AtomicInteger();
+
+    private ServerSocket mServerSocket;
+    private WeatherHttpClient mHttpClient;
+
+    @Before
+    public void setUp() throws IOException {
+        mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        mHttpClient = new WeatherHttpClient(5000, 5000);
+
+        Thread acceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        final Socket socket = mServerSocket.accept();
+                        mConnectionCount.incrementAndGet();
+                        new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                serve(socket);
+                            }
+                        }).start();
+                    }
+                } catch (IOException e) {
+                    // Server socket closed by tearDown.
+                }
+            }
+        });
+        acceptThread.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServerSocket.close();
+    }
+
+    @Test
+    public void reusesConnectionWhenBodyIsRead() throws IOException {
+        for (int i = 0; i < REQUEST_COUNT; i++) {
+            HttpURLConnection connection = mHttpClient.open(getUrl());
+            Reader body = new InputStreamReader(connection.getInputStream(), "UTF-8");
+            assertEquals('{', body.read());
+            mHttpClient.release(connection, body);
+        }
+
+        assertEquals(REQUEST_COUNT, mRequestCount.get());
+        assertEquals(1, mConnectionCount.get());
+    }
+
+    @Test
+    public void reusesConnectionWhenBodyIsNotOpened() throws IOException {
+        for (int i = 0; i < REQUEST_COUNT; i++) {
+            HttpURLConnection connection = mHttpClient.open(getUrl());
+            assertEquals(HttpURLConnection.HTTP_OK, connection.getResponseCode());
+            mHttpClient.release(connection, null);
+        }
+
+        assertEquals(REQUEST_COUNT, mRequestCount.get());
+        assertEquals(1, mConnectionCount.get());
+    }
+
+    @Test
+    public void disconnectDoesNotReuseConnection() throws IOException {
+        for (int i = 0; i < REQUEST_COUNT; i++) {
+            HttpURLConnection connection = mHttpClient.open(getUrl());
+            assertEquals(HttpURLConnection.HTTP_OK, connection.getResponseCode());
+            connection.disconnect();
+        }
+
+        assertEquals(REQUEST_COUNT, mConnectionCount.get());
+    }
+
+    private URL getUrl() throws IOException {
+        return new URL("http://127.0.0.1:" + mServerSocket.getLocalPort() + "/weather");
+    }
+
+    /**
+     * Answers every request on the connection with the same JSON body until the client closes it.
+     */
+    private void serve(Socket socket) {
+        try {
+            BufferedReader in = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), "ISO-8859-1"));
+            OutputStream out = socket.getOutputStream();
+            byte[] body = RESPONSE_BODY.getBytes("UTF-8");
+
+            String requestLine;
+            while ((requestLine = in.readLine()) != null) {
+                if (requestLine.isEmpty()) continue;
+
+                // Skip the headers, requests have no body.
+                String header;
+                while ((header = in.readLine()) != null && !header.isEmpty()) {
+                    // Nothing to do.
+                }
+                mRequestCount.incrementAndGet();
+
+                String headers = "HTTP/1.1 200 OK\r\n" +
+                        "Content-Type: application/json; charset=utf-8\r\n" +
+                        "Content-Length: " + body.length + "\r\n" +
+                        "Connection: keep-alive\r\n" +
+                        "\r\n";
+                out.write(headers.getBytes("ISO-8859-1"));
+                out.write(body);
+                out.flush();
+            }
+        } catch (IOException e) {
+            // Connection closed by the client.
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // Nothing to do.
+            }
+        }
+    }
+}
@@ -1,10 +1,12 @@
 package com.example.android.sunshine;
 
 import android.content.Intent;
+import android.database.ContentObserver;
 import android.database.Cursor;
 import android.databinding.DataBindingUtil;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.app.LoaderManager;
@@ -15,6 +17,9 @@ import android.support.v7.app.AppCompatActivity;
 import android.view.Menu;
 import android.view.MenuItem;
 
+import com.example.android.sunshine.data.ForecastSnapshot;
+import com.example.android.sunshine.data.ForecastSnapshotCache;
+import com.example.android.sunshine.data.SunshinePreferences;
 import com.example.android.sunshine.data.WeatherContract;
 import com.example.android.sunshine.databinding.ActivityDetailBinding;
 import com.example.android.sunshine.utilities.SunshineDateUtils;
@@ -53,6 +58,9 @@ public class DetailActivity extends AppCompatActivity implements
 
     private ActivityDetailBinding mDetailBinding;
 
+    // Re-reads the cached forecast when the day changes, null if the loader is used instead.
+    private ContentObserver mSnapshotObserver;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -65,7 +73,46 @@ public class DetailActivity extends AppCompatActivity implements
             throw new NullPointerException();
         }
 
-        getSupportLoaderManager().initLoader(LOADER_ID, null, this);
+        // Shown straight from memory if the forecast is cached, the database is the fallback.
+        if (bindFromSnapshot()) {
+            mSnapshotObserver = new ContentObserver(new Handler()) {
+                @Override
+                public void onChange(boolean selfChange) {
+                    if (!bindFromSnapshot()) {
+                        getSupportLoaderManager().initLoader(LOADER_ID, null, DetailActivity.this);
+                    }
+                }
+            };
+            getContentResolver().registerContentObserver(mUri, false, mSnapshotObserver);
+        } else {
+            getSupportLoaderManager().initLoader(LOADER_ID, null, this);
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (mSnapshotObserver != null) {
+            getContentResolver().unregisterContentObserver(mSnapshotObserver);
+        }
+    }
+
+    /**
+     * Shows the weather of the day from the forecast cached in memory.
+     *
+     * @return true if the day was in the cache and is shown.
+     */
+    private boolean bindFromSnapshot() {
+        ForecastSnapshot snapshot = ForecastSnapshotCache
+                .get(SunshinePreferences.getPreferredWeatherLocation(this));
+        if (snapshot == null) return false;
+
+        ForecastSnapshot.Day day = snapshot.getDay(Long.parseLong(mUri.getLastPathSegment()));
+        if (day == null) return false;
+
+        bindWeather(day.date, day.weatherId, day.maxTemp, day.minTemp,
+                day.humidity, day.windSpeed, day.degrees, day.pressure);
+        return true;
     }
 
     @Override
@@ -116,11 +163,15 @@ public class DetailActivity extends AppCompatActivity implements
     public Loader<Cursor> onCreateLoader(int loaderId, @Nullable Bundle bundle) {
         switch (loaderId) {
             case LOADER_ID: {
+                // The date URI matches every saved location, narrow it to the preferred one.
+                String selection = WeatherContract.WeatherEntry.getSqlSelectForLocation(
+                        SunshinePreferences.getPreferredWeatherLocation(this));
+
                 return new CursorLoader(
                         this,
                         mUri,
                         COLUMN_NAMES,
-                        null,
+                        selection,
                         null,
                         null);
             }
@@ -134,13 +185,28 @@ public class DetailActivity extends AppCompatActivity implements
     public void onLoadFinished(@NonNull Loader<Cursor> loader, Cursor cursor) {
         if (cursor == null || !cursor.moveToFirst()) return;
 
+        bindWeather(
+                cursor.getLong(INDEX_WEATHER_DATE),
+                cursor.getInt(INDEX_WEATHER_CONDITION_ID),
+                cursor.getDouble(INDEX_WEATHER_MAX_TEMP),
+                cursor.getDouble(INDEX_WEATHER_MIN_TEMP),
+                cursor.getFloat(INDEX_WEATHER_HUMIDITY),
+                cursor.getFloat(INDEX_WEATHER_WIND_SPEED),
+                cursor.getFloat(INDEX_WEATHER_DEGREES),
+                cursor.getFloat(INDEX_WEATHER_PRESSURE));
+    }
+
+    /**
+     * Shows the weather of a day.
+     */
+    private void bindWeather(long date, int weatherId, double highTemp, double lowTemp,
+                             float humidity, float windSpeed, float windDirection,
+                             float pressure) {
         // Weather date.
-        long date = cursor.getLong(INDEX_WEATHER_DATE);
         String dateString = SunshineDateUtils.getFriendlyDateString(this, date, true);
         mDetailBinding.layoutPrimaryWeatherInfo.tvWeatherDate.setText(dateString);
 
         // Weather description.
-        int weatherId = cursor.getInt(INDEX_WEATHER_CONDITION_ID);
         String weatherStatus = SunshineWeatherUtils.getStringForWeatherCondition(this, weatherId);
         String weatherStatusA11y = getString(R.string.a11y_forecast, weatherStatus);
         mDetailBinding.layoutPrimaryWeatherInfo.tvWeatherStatus.setText(weatherStatus);
@@ -153,21 +219,18 @@ public class DetailActivity extends AppCompatActivity implements
         mDetailBinding.layoutPrimaryWeatherInfo.ivWeatherIcon.setContentDescription(weatherStatusA11y);
 
         // Weather high temperature.
-        double highTemp = cursor.getDouble(INDEX_WEATHER_MAX_TEMP);
         String highTempString = SunshineWeatherUtils.formatTemperature(this, highTemp);
         String highTempA11y = getString(R.string.a11y_high_temp, highTempString);
         mDetailBinding.layoutPrimaryWeatherInfo.tvWeatherHighTemp.setText(highTempString);
         mDetailBinding.layoutPrimaryWeatherInfo.tvWeatherHighTemp.setContentDescription(highTempA11y);
 
         // Weather low temperature.
-        double lowTemp = cursor.getDouble(INDEX_WEATHER_MIN_TEMP);
         String lowTempString = SunshineWeatherUtils.formatTemperature(this, lowTemp);
         String lowTempA11y = getString(R.string.a11y_low_temp, lowTempString);
         mDetailBinding.layoutPrimaryWeatherInfo.tvWeatherLowTemp.setText(lowTempString);
         mDetailBinding.layoutPrimaryWeatherInfo.tvWeatherLowTemp.setContentDescription(lowTempA11y);
 
         // Weather humidity.
-        float humidity = cursor.getFloat(INDEX_WEATHER_HUMIDITY);
         String humidityString = getString(R.string.format_humidity, humidity);
         String humidityA11y = getString(R.string.a11y_humidity, humidityString);
         mDetailBinding.layoutExtraWeatherInfo.tvWeatherHumidity.setText(humidityString);
@@ -175,8 +238,6 @@ public class DetailActivity extends AppCompatActivity implements
         mDetailBinding.layoutExtraWeatherInfo.tvWeatherHumidityLabel.setContentDescription(humidityA11y);
 
         // Weather wind speed and direction.
-        float windSpeed = cursor.getFloat(INDEX_WEATHER_WIND_SPEED);
-        float windDirection = cursor.getFloat(INDEX_WEATHER_DEGREES);
         String windString = SunshineWeatherUtils.getFormattedWind(this, windSpeed, windDirection);
         String windA11y = getString(R.string.a11y_wind, windString);
         mDetailBinding.layoutExtraWeatherInfo.tvWeatherWind.setText(windString);
@@ -184,7 +245,6 @@ public class DetailActivity extends AppCompatActivity implements
         mDetailBinding.layoutExtraWeatherInfo.tvWeatherWindLabel.setContentDescription(windA11y);
 
         // Weather pressure.
-        float pressure = cursor.getFloat(INDEX_WEATHER_PRESSURE);
         String pressureString = getString(R.string.format_pressure, pressure);
         String pressureA11y = getString(R.string.a11y_pressure, pressureString);
         mDetailBinding.layoutExtraWeatherInfo.tvWeatherPressure.setText(pressureString);
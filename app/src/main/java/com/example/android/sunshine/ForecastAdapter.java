@@ -1,7 +1,6 @@
 package com.example.android.sunshine;
 
 import android.content.Context;
-import android.database.Cursor;
 import android.support.annotation.NonNull;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
@@ -10,7 +9,8 @@ import android.view.ViewGroup;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.data.ForecastListModel;
+import com.example.android.sunshine.utilities.ForecastFormatCache;
 import com.example.android.sunshine.utilities.SunshineWeatherUtils;
 
 /**
@@ -33,7 +33,7 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         void onClick(long weatherDate);
     }
 
-    private Cursor mCursor;
+    private ForecastListModel mForecast;
     private boolean mUseTodayLayout;
 
     /**
@@ -90,17 +90,15 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
      */
     @Override
     public void onBindViewHolder(@NonNull ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        if (mCursor != null) {
-            mCursor.moveToPosition(position);
-
+        if (mForecast != null) {
             // Weather date.
-            long date = mCursor.getLong(MainActivity.INDEX_WEATHER_DATE);
-            String dateString = SunshineDateUtils
+            long date = mForecast.getDate(position);
+            String dateString = ForecastFormatCache
                     .getFriendlyDateString(mContext, date, false);
             forecastAdapterViewHolder.mWeatherDateTextView.setText(dateString);
 
             // Weather description.
-            int weatherId = mCursor.getInt(MainActivity.INDEX_WEATHER_CONDITION_ID);
+            int weatherId = mForecast.getWeatherId(position);
             String descriptionString = SunshineWeatherUtils
                     .getStringForWeatherCondition(mContext, weatherId);
             forecastAdapterViewHolder.mWeatherStatusTextView.setText(descriptionString);
@@ -129,13 +127,13 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
             forecastAdapterViewHolder.mWeatherIconImageView.setImageResource(weatherImageId);
 
             // Weather high temperature.
-            double highInCelsius = mCursor.getDouble(MainActivity.INDEX_WEATHER_MAX_TEMP);
-            String highTempString = SunshineWeatherUtils.formatTemperature(mContext, highInCelsius);
+            double highInCelsius = mForecast.getHighTemp(position);
+            String highTempString = ForecastFormatCache.formatTemperature(mContext, highInCelsius);
             forecastAdapterViewHolder.mWeatherHighTempTextView.setText(highTempString);
 
             // Weather low temperature.
-            double lowInCelsius = mCursor.getDouble(MainActivity.INDEX_WEATHER_MIN_TEMP);
-            String lowTempString = SunshineWeatherUtils.formatTemperature(mContext, lowInCelsius);
+            double lowInCelsius = mForecast.getLowTemp(position);
+            String lowTempString = ForecastFormatCache.formatTemperature(mContext, lowInCelsius);
             forecastAdapterViewHolder.mWeatherLowTempTextView.setText(lowTempString);
         }
     }
@@ -147,10 +145,10 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
      */
     @Override
     public int getItemCount() {
-        if (mCursor == null) {
+        if (mForecast == null) {
             return 0;
         } else {
-            return mCursor.getCount();
+            return mForecast.getCount();
         }
     }
 
@@ -172,10 +170,10 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     /**
      * Used to set weather date onto the Adapter.
      *
-     * @param cursor Cursor with new data to be displayed.
+     * @param forecast Forecast to be displayed, may be null.
      */
-    void setWeatherCursor(Cursor cursor) {
-        mCursor = cursor;
+    void setForecast(ForecastListModel forecast) {
+        mForecast = forecast;
         notifyDataSetChanged();
     }
 
@@ -215,9 +213,8 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         @Override
         public void onClick(View v) {
             int position = getAdapterPosition();
-            mCursor.moveToPosition(position);
-            long date = mCursor.getLong(MainActivity.INDEX_WEATHER_DATE);
-            mClickHandler.onClick(date);
+            if (mForecast == null || position == RecyclerView.NO_POSITION) return;
+            mClickHandler.onClick(mForecast.getDate(position));
         }
     }
 }
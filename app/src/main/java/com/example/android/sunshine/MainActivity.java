@@ -16,13 +16,11 @@
 package com.example.android.sunshine;
 
 import android.content.Intent;
-import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.app.LoaderManager.LoaderCallbacks;
-import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.LinearLayoutManager;
@@ -34,6 +32,9 @@ import android.view.View;
 import android.widget.ProgressBar;
 
 import com.example.android.sunshine.ForecastAdapter.ForecastAdapterOnClickHandler;
+import com.example.android.sunshine.data.ForecastListLoader;
+import com.example.android.sunshine.data.ForecastListModel;
+import com.example.android.sunshine.data.ForecastListSnapshot;
 import com.example.android.sunshine.data.SunshinePreferences;
 import com.example.android.sunshine.data.WeatherContract;
 import com.example.android.sunshine.sync.SunshineSyncUtils;
@@ -41,12 +42,15 @@ import com.example.android.sunshine.utilities.FakeDataUtils;
 
 public class MainActivity extends AppCompatActivity implements
         ForecastAdapterOnClickHandler,
-        LoaderCallbacks<Cursor> {
+        LoaderCallbacks<ForecastListModel> {
 
     private static final String TAG = MainActivity.class.getSimpleName();
 
     private static final int LOADER_ID = 22;
 
+    // Key of the location the loader selects, kept with the loader across configuration changes.
+    private static final String STATE_LOADER_LOCATION = "loader_location";
+
     // Column names what are needed for our purposes.
     private static final String[] COLUMN_NAMES = {
             WeatherContract.WeatherEntry.COLUMN_DATE,
@@ -66,6 +70,9 @@ public class MainActivity extends AppCompatActivity implements
     private ForecastAdapter mForecastAdapter;
     private ProgressBar mProgressBar;
 
+    // Location set in preferences when the loader was created, its selection is built from it.
+    private String mLoaderLocation;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -83,7 +90,10 @@ public class MainActivity extends AppCompatActivity implements
 
         mProgressBar = findViewById(R.id.pb_loading_data);
 
-        showLoading();
+        mLoaderLocation = savedInstanceState == null
+                ? SunshinePreferences.getPreferredWeatherLocation(this)
+                : savedInstanceState.getString(STATE_LOADER_LOCATION);
+        showSnapshot(mLoaderLocation);
 
         getSupportLoaderManager().initLoader(LOADER_ID, null, this);
 
@@ -93,11 +103,37 @@ public class MainActivity extends AppCompatActivity implements
     @Override
     protected void onStart() {
         super.onStart();
+
+        // The location may have been changed in settings, the loader only selects the old one.
+        String location = SunshinePreferences.getPreferredWeatherLocation(this);
+        if (!location.equals(mLoaderLocation)) {
+            mLoaderLocation = location;
+            showSnapshot(location);
+            getSupportLoaderManager().restartLoader(LOADER_ID, null, this);
+        }
     }
 
     @Override
-    protected void onDestroy() {
-        super.onDestroy();
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putString(STATE_LOADER_LOCATION, mLoaderLocation);
+    }
+
+    /**
+     * Draws the snapshot of the last sync of a location until the loader returns, shows loading
+     * progress if there is none.
+     *
+     * @param location Location setting the snapshot was written for.
+     */
+    private void showSnapshot(String location) {
+        ForecastListModel snapshot = ForecastListSnapshot.read(this, location);
+        if (snapshot != null) {
+            mForecastAdapter.setForecast(snapshot);
+            showWeatherDataView();
+        } else {
+            mForecastAdapter.setForecast(null);
+            showLoading();
+        }
     }
 
     @Override
@@ -113,7 +149,7 @@ public class MainActivity extends AppCompatActivity implements
         if (itemId == R.id.action_refresh) {
             // Reset RecyclerView before querying for new data.
             showLoading();
-            mForecastAdapter.setWeatherCursor(null);
+            mForecastAdapter.setForecast(null);
             getSupportLoaderManager().initLoader(LOADER_ID, null, this);
             return true;
         } else if (itemId == R.id.action_map) {
@@ -184,7 +220,7 @@ public class MainActivity extends AppCompatActivity implements
      */
     @NonNull
     @Override
-    public Loader<Cursor> onCreateLoader(int loaderId, @Nullable final Bundle bundle) {
+    public Loader<ForecastListModel> onCreateLoader(int loaderId, @Nullable final Bundle bundle) {
         switch (loaderId) {
             case LOADER_ID: {
                 // All rows of weather.
@@ -193,15 +229,25 @@ public class MainActivity extends AppCompatActivity implements
                 // Sort by date.
                 String sortOrder = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
 
-                String selection = WeatherContract.WeatherEntry.getSqlSelectForTodayOnwards();
+                // Today onwards, for the location set in preferences. onStart restarts the
+                // loader when the preference changes.
+                mLoaderLocation = SunshinePreferences.getPreferredWeatherLocation(this);
+                String selection = WeatherContract.WeatherEntry.getSqlSelectForTodayOnwards()
+                        + " AND " + WeatherContract.WeatherEntry.getSqlSelectForLocation(
+                                mLoaderLocation);
 
-                return new CursorLoader(
+                // Read into primitive arrays off the main thread, the adapter never sees a Cursor.
+                return new ForecastListLoader(
                         this,
                         queryUri,
                         COLUMN_NAMES,
                         selection,
                         null,
-                        sortOrder);
+                        sortOrder,
+                        INDEX_WEATHER_DATE,
+                        INDEX_WEATHER_CONDITION_ID,
+                        INDEX_WEATHER_MAX_TEMP,
+                        INDEX_WEATHER_MIN_TEMP);
             }
 
             default:
@@ -210,21 +256,25 @@ public class MainActivity extends AppCompatActivity implements
     }
 
     @Override
-    public void onLoadFinished(@NonNull Loader<Cursor> loader, Cursor weatherCursor) {
-        mForecastAdapter.setWeatherCursor(weatherCursor);
+    public void onLoadFinished(@NonNull Loader<ForecastListModel> loader,
+                               ForecastListModel forecast) {
+        mForecastAdapter.setForecast(forecast);
 
         if (mPosition == RecyclerView.NO_POSITION) {
             mPosition = 0;
         }
         mRecyclerView.smoothScrollToPosition(mPosition);
 
-        if (weatherCursor.getCount() > 0) {
+        if (forecast != null && forecast.getCount() > 0) {
             showWeatherDataView();
+        } else {
+            // The startup snapshot may be showing days that are no longer stored.
+            showLoading();
         }
     }
 
     @Override
-    public void onLoaderReset(@NonNull Loader<Cursor> loader) {
-        mForecastAdapter.setWeatherCursor(null);
+    public void onLoaderReset(@NonNull Loader<ForecastListModel> loader) {
+        mForecastAdapter.setForecast(null);
     }
 }
\ No newline at end of file
@@ -10,8 +10,9 @@ import android.support.v7.preference.PreferenceFragmentCompat;
 import android.support.v7.preference.PreferenceScreen;
 
 import com.example.android.sunshine.data.SunshinePreferences;
-import com.example.android.sunshine.data.WeatherContract;
+import com.example.android.sunshine.data.WeatherChangeNotifier;
 import com.example.android.sunshine.sync.SunshineSyncUtils;
+import com.example.android.sunshine.utilities.ForecastFormatCache;
 
 public class SettingsFragment extends PreferenceFragmentCompat implements
         SharedPreferences.OnSharedPreferenceChangeListener {
@@ -76,10 +77,14 @@ public class SettingsFragment extends PreferenceFragmentCompat implements
         if (key.equals(getString(R.string.pref_location_key))) {
             // Location changes.
             SunshinePreferences.resetLocationCoordinates(activity);
-            SunshineSyncUtils.startImmediateSync(activity);
+            SunshineSyncUtils.restartSync(activity);
         } else if (key.equals(getString(R.string.pref_units_key))) {
             // Units have changed. update lists of weather entries accordingly
-            activity.getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+            ForecastFormatCache.invalidate();
+            WeatherChangeNotifier.notifyAllChanged(activity);
+        } else if (key.equals(getString(R.string.pref_archive_retention_key))) {
+            // A shorter retention drops the partitions that are now too old.
+            SunshineSyncUtils.startArchiveMaintenance(activity);
         }
 
         // After every preference change setting summaries again.
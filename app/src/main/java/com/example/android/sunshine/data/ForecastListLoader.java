@@ -0,0 +1,113 @@
+package com.example.android.sunshine.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.v4.content.AsyncTaskLoader;
+
+/**
+ * Loads the main forecast list into a {@link ForecastListModel}. Works like CursorLoader: the
+ * query runs in the background and the list is reloaded when weather changes, but the cursor is
+ * read into the model and closed right away instead of being handed to the UI.
+ * <p/>
+ * Changes are observed on {@link WeatherContract.WeatherEntry#CHANGES_URI}, notified once per
+ * write batch, not on the URIs of the changed days.
+ */
+public class ForecastListLoader extends AsyncTaskLoader<ForecastListModel> {
+
+    private final ForceLoadContentObserver mObserver = new ForceLoadContentObserver();
+
+    private final Uri mUri;
+    private final String[] mProjection;
+    private final String mSelection;
+    private final String[] mSelectionArgs;
+    private final String mSortOrder;
+
+    // Indexes of the model columns in mProjection.
+    private final int mDateIndex;
+    private final int mWeatherIdIndex;
+    private final int mHighTempIndex;
+    private final int mLowTempIndex;
+
+    private ForecastListModel mModel;
+    private boolean mObserverRegistered;
+
+    /**
+     * Creates the loader. Arguments are the same as for a CursorLoader, plus the indexes of the
+     * model columns in the projection.
+     */
+    public ForecastListLoader(Context context, Uri uri, String[] projection, String selection,
+                              String[] selectionArgs, String sortOrder, int dateIndex,
+                              int weatherIdIndex, int highTempIndex, int lowTempIndex) {
+        super(context);
+        mUri = uri;
+        mProjection = projection;
+        mSelection = selection;
+        mSelectionArgs = selectionArgs;
+        mSortOrder = sortOrder;
+        mDateIndex = dateIndex;
+        mWeatherIdIndex = weatherIdIndex;
+        mHighTempIndex = highTempIndex;
+        mLowTempIndex = lowTempIndex;
+    }
+
+    @Override
+    public ForecastListModel loadInBackground() {
+        Cursor cursor = getContext().getContentResolver().query(
+                mUri, mProjection, mSelection, mSelectionArgs, mSortOrder);
+
+        if (cursor == null) {
+            return null;
+        }
+
+        try {
+            return ForecastListModel.fromCursor(
+                    cursor, mDateIndex, mWeatherIdIndex, mHighTempIndex, mLowTempIndex);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Override
+    public void deliverResult(ForecastListModel model) {
+        if (isReset()) return;
+
+        mModel = model;
+        if (isStarted()) {
+            super.deliverResult(model);
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (!mObserverRegistered) {
+            getContext().getContentResolver().registerContentObserver(
+                    WeatherContract.WeatherEntry.CHANGES_URI, false, mObserver);
+            mObserverRegistered = true;
+        }
+
+        if (mModel != null) {
+            deliverResult(mModel);
+        }
+        if (takeContentChanged() || mModel == null) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+
+        if (mObserverRegistered) {
+            getContext().getContentResolver().unregisterContentObserver(mObserver);
+            mObserverRegistered = false;
+        }
+        mModel = null;
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.android.sunshine.data;
+
+import android.database.Cursor;
+
+import java.util.Arrays;
+
+/**
+ * Columns of the main forecast list copied out of a Cursor into primitive arrays. Built once on a
+ * background thread, so binding a row reads plain arrays instead of moving a Cursor and going
+ * through its CursorWindow on the main thread.
+ */
+public final class ForecastListModel {
+
+    private final long[] mDates;
+    private final int[] mWeatherIds;
+    private final float[] mHighTemps;
+    private final float[] mLowTemps;
+
+    private ForecastListModel(int count) {
+        mDates = new long[count];
+        mWeatherIds = new int[count];
+        mHighTemps = new float[count];
+        mLowTemps = new float[count];
+    }
+
+    /**
+     * Copies the first count rows of the arrays, used for the snapshot drawn on startup.
+     */
+    ForecastListModel(long[] dates, int[] weatherIds, float[] highTemps, float[] lowTemps,
+                      int count) {
+        mDates = Arrays.copyOf(dates, count);
+        mWeatherIds = Arrays.copyOf(weatherIds, count);
+        mHighTemps = Arrays.copyOf(highTemps, count);
+        mLowTemps = Arrays.copyOf(lowTemps, count);
+    }
+
+    /**
+     * Reads every row of the cursor. The cursor is left positioned after the last row.
+     *
+     * @param cursor         Cursor with the forecast.
+     * @param dateIndex      Index of the date column.
+     * @param weatherIdIndex Index of the weather id column.
+     * @param highTempIndex  Index of the max temperature column.
+     * @param lowTempIndex   Index of the min temperature column.
+     * @return               The model.
+     */
+    public static ForecastListModel fromCursor(Cursor cursor, int dateIndex, int weatherIdIndex,
+                                               int highTempIndex, int lowTempIndex) {
+        ForecastListModel model = new ForecastListModel(cursor.getCount());
+
+        cursor.moveToPosition(-1);
+        for (int i = 0; cursor.moveToNext(); i++) {
+            model.mDates[i] = cursor.getLong(dateIndex);
+            model.mWeatherIds[i] = cursor.getInt(weatherIdIndex);
+            model.mHighTemps[i] = cursor.getFloat(highTempIndex);
+            model.mLowTemps[i] = cursor.getFloat(lowTempIndex);
+        }
+
+        return model;
+    }
+
+    /**
+     * @return Number of days in the list.
+     */
+    public int getCount() {
+        return mDates.length;
+    }
+
+    /**
+     * @param position Position in the list.
+     * @return         Normalized UTC date in milliseconds.
+     */
+    public long getDate(int position) {
+        return mDates[position];
+    }
+
+    /**
+     * @param position Position in the list.
+     * @return         Weather id of the day.
+     */
+    public int getWeatherId(int position) {
+        return mWeatherIds[position];
+    }
+
+    /**
+     * @param position Position in the list.
+     * @return         Max temperature of the day in celsius degrees.
+     */
+    public float getHighTemp(int position) {
+        return mHighTemps[position];
+    }
+
+    /**
+     * @param position Position in the list.
+     * @return         Min temperature of the day in celsius degrees.
+     */
+    public float getLowTemp(int position) {
+        return mLowTemps[position];
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.android.sunshine.data;
+
+import android.content.Context;
+import android.support.v4.util.AtomicFile;
+import android.util.Log;
+
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Binary copy of the top of the main forecast list, written after each sync so MainActivity can
+ * draw the list on its first frame, before the provider opens the database. The loader result
+ * replaces it as soon as it arrives.
+ * <p/>
+ * The file holds a version, the location setting and up to {@link #MAX_DAYS} rows of date,
+ * weather id and temperatures. Days before today are skipped when it is read, a snapshot of a
+ * different location or version is ignored.
+ */
+public final class ForecastListSnapshot {
+
+    private static final String TAG = ForecastListSnapshot.class.getSimpleName();
+
+    private static final String FILE_NAME = "forecast_list.bin";
+
+    // Changed whenever the layout of the file changes.
+    private static final int FORMAT_VERSION = 1;
+
+    // More rows than the first screen shows.
+    private static final int MAX_DAYS = 10;
+
+    private ForecastListSnapshot() {
+    }
+
+    /**
+     * Reads the snapshot for the location, on the calling thread. The file is a few hundred bytes.
+     *
+     * @param context         Used to find the file.
+     * @param locationSetting Location string, see {@link SunshinePreferences}.
+     * @return                Rows from today onwards, null if there is no usable snapshot.
+     */
+    public static ForecastListModel read(Context context, String locationSetting) {
+        AtomicFile file = getFile(context);
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(file.openRead()));
+            if (in.readInt() != FORMAT_VERSION) return null;
+            if (!in.readUTF().equals(locationSetting)) return null;
+
+            int count = in.readInt();
+            if (count < 0 || count > MAX_DAYS) return null;
+
+            long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+            long[] dates = new long[count];
+            int[] weatherIds = new int[count];
+            float[] highTemps = new float[count];
+            float[] lowTemps = new float[count];
+
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                dates[kept] = in.readLong();
+                weatherIds[kept] = in.readInt();
+                highTemps[kept] = in.readFloat();
+                lowTemps[kept] = in.readFloat();
+                if (dates[kept] >= today) {
+                    kept++;
+                }
+            }
+
+            if (kept == 0) return null;
+            return new ForecastListModel(dates, weatherIds, highTemps, lowTemps, kept);
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.e(TAG, "Error reading forecast list snapshot", e);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Replaces the snapshot with the first days of a forecast.
+     *
+     * @param context  Used to find the file.
+     * @param forecast Forecast of the location set in preferences.
+     */
+    public static synchronized void write(Context context, ForecastSnapshot forecast) {
+        AtomicFile file = getFile(context);
+        List<ForecastSnapshot.Day> days = forecast.getDays();
+        int count = Math.min(days.size(), MAX_DAYS);
+
+        FileOutputStream stream = null;
+        try {
+            stream = file.startWrite();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(forecast.getLocationSetting());
+            out.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                ForecastSnapshot.Day day = days.get(i);
+                out.writeLong(day.date);
+                out.writeInt(day.weatherId);
+                out.writeFloat((float) day.maxTemp);
+                out.writeFloat((float) day.minTemp);
+            }
+            out.flush();
+            file.finishWrite(stream);
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing forecast list snapshot", e);
+            if (stream != null) {
+                file.failWrite(stream);
+            }
+        }
+    }
+
+    /**
+     * Deletes the snapshot.
+     *
+     * @param context Used to find the file.
+     */
+    public static synchronized void delete(Context context) {
+        getFile(context).delete();
+    }
+
+    private static AtomicFile getFile(Context context) {
+        return new AtomicFile(new File(context.getFilesDir(), FILE_NAME));
+    }
+
+    private static void closeQuietly(DataInputStream in) {
+        if (in == null) return;
+        try {
+            in.close();
+        } catch (IOException e) {
+            // Nothing to do, the snapshot was read or isn't used.
+        }
+    }
+}
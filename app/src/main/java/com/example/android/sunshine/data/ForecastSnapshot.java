@@ -0,0 +1,79 @@
+package com.example.android.sunshine.data;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable copy of the forecast of one location from today onwards, as it was in the database
+ * after the last committed write. Instances are published by {@link ForecastSnapshotCache} and can
+ * be shared between threads without locking.
+ */
+public final class ForecastSnapshot {
+
+    private final String mLocationSetting;
+
+    // Sorted by date, so a day can be found with a binary search of mDates.
+    private final Day[] mDays;
+    private final long[] mDates;
+
+    ForecastSnapshot(String locationSetting, List<Day> days) {
+        mLocationSetting = locationSetting;
+        mDays = days.toArray(new Day[days.size()]);
+        mDates = new long[mDays.length];
+        for (int i = 0; i < mDays.length; i++) {
+            mDates[i] = mDays[i].date;
+        }
+    }
+
+    /**
+     * @return Location string the forecast belongs to.
+     */
+    public String getLocationSetting() {
+        return mLocationSetting;
+    }
+
+    /**
+     * Finds the weather of a day.
+     *
+     * @param date Normalized UTC date in milliseconds.
+     * @return     Weather of the day, null if the day is not part of the forecast.
+     */
+    public Day getDay(long date) {
+        int index = Arrays.binarySearch(mDates, date);
+        return index >= 0 ? mDays[index] : null;
+    }
+
+    /**
+     * @return Days of the forecast ordered by date.
+     */
+    public List<Day> getDays() {
+        return Collections.unmodifiableList(Arrays.asList(mDays));
+    }
+
+    /**
+     * Weather of a single day, one row of the weather table.
+     */
+    public static final class Day {
+        public final long date;
+        public final int weatherId;
+        public final double minTemp;
+        public final double maxTemp;
+        public final float humidity;
+        public final float pressure;
+        public final float windSpeed;
+        public final float degrees;
+
+        Day(long date, int weatherId, double minTemp, double maxTemp, float humidity,
+            float pressure, float windSpeed, float degrees) {
+            this.date = date;
+            this.weatherId = weatherId;
+            this.minTemp = minTemp;
+            this.maxTemp = maxTemp;
+            this.humidity = humidity;
+            this.pressure = pressure;
+            this.windSpeed = windSpeed;
+            this.degrees = degrees;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.android.sunshine.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.sunshine.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Process-wide cache of {@link ForecastSnapshot}s, one per saved location. WeatherProvider
+ * publishes new snapshots after every committed write and before it notifies observers, so
+ * screens and notifications can read the current forecast without touching the database.
+ * <p/>
+ * Snapshots are loaded the first time the provider is queried for weather. Until then, and for
+ * locations without weather, {@link #get(String)} returns null and callers fall back to the
+ * provider.
+ */
+public final class ForecastSnapshotCache {
+
+    private static final String[] SNAPSHOT_PROJECTION = {
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES
+    };
+
+    // Indexes of the SNAPSHOT_PROJECTION for more convenient access.
+    private static final int INDEX_WEATHER_DATE = 0;
+    private static final int INDEX_WEATHER_CONDITION_ID = 1;
+    private static final int INDEX_WEATHER_MIN_TEMP = 2;
+    private static final int INDEX_WEATHER_MAX_TEMP = 3;
+    private static final int INDEX_WEATHER_HUMIDITY = 4;
+    private static final int INDEX_WEATHER_PRESSURE = 5;
+    private static final int INDEX_WEATHER_WIND_SPEED = 6;
+    private static final int INDEX_WEATHER_DEGREES = 7;
+
+    // Snapshots keyed by location setting, replaced as a whole. Null until first loaded.
+    private static volatile Map<String, ForecastSnapshot> sSnapshots;
+
+    private ForecastSnapshotCache() {
+    }
+
+    /**
+     * Returns the latest forecast of a location, never reads the database.
+     *
+     * @param locationSetting Location string, see {@link SunshinePreferences}.
+     * @return                The snapshot, null if it isn't loaded or the location has no weather.
+     */
+    public static ForecastSnapshot get(String locationSetting) {
+        Map<String, ForecastSnapshot> snapshots = sSnapshots;
+        return snapshots == null ? null : snapshots.get(locationSetting);
+    }
+
+    /**
+     * Returns today's weather of a location. Shorthand for the notification.
+     *
+     * @param locationSetting Location string, see {@link SunshinePreferences}.
+     * @return                Today's weather, null if it isn't in the cache.
+     */
+    public static ForecastSnapshot.Day getToday(String locationSetting) {
+        ForecastSnapshot snapshot = get(locationSetting);
+        if (snapshot == null) return null;
+        return snapshot.getDay(SunshineDateUtils.normalizeDate(System.currentTimeMillis()));
+    }
+
+    /**
+     * Loads the snapshots if that didn't happen yet.
+     *
+     * @param db Database to read from.
+     */
+    static void ensureLoaded(SQLiteDatabase db) {
+        if (sSnapshots == null) {
+            publish(db);
+        }
+    }
+
+    /**
+     * Reads the forecast of every saved location from today onwards and replaces all snapshots.
+     * Must be called after the write is committed.
+     *
+     * @param db Database to read from.
+     */
+    static synchronized void publish(SQLiteDatabase db) {
+        Map<String, ForecastSnapshot> snapshots = new HashMap<>();
+        String todayOnwards = WeatherEntry.getSqlSelectForTodayOnwards();
+
+        Cursor locationCursor = db.query(
+                LocationEntry.TABLE_NAME,
+                new String[] {LocationEntry._ID, LocationEntry.COLUMN_LOCATION_SETTING},
+                null, null, null, null, null);
+        try {
+            while (locationCursor.moveToNext()) {
+                long locationId = locationCursor.getLong(0);
+                String locationSetting = locationCursor.getString(1);
+
+                List<ForecastSnapshot.Day> days = readDays(db, locationId, todayOnwards);
+                if (!days.isEmpty()) {
+                    snapshots.put(locationSetting, new ForecastSnapshot(locationSetting, days));
+                }
+            }
+        } finally {
+            locationCursor.close();
+        }
+
+        sSnapshots = Collections.unmodifiableMap(snapshots);
+    }
+
+    /**
+     * Reads the forecast of one location, answered by the list index of the weather table.
+     */
+    private static List<ForecastSnapshot.Day> readDays(SQLiteDatabase db, long locationId,
+                                                       String todayOnwards) {
+        List<ForecastSnapshot.Day> days = new ArrayList<>();
+
+        Cursor cursor = db.query(
+                WeatherEntry.TABLE_NAME,
+                SNAPSHOT_PROJECTION,
+                WeatherEntry.COLUMN_LOC_KEY + " = ? AND " + todayOnwards,
+                new String[] {Long.toString(locationId)},
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+        try {
+            while (cursor.moveToNext()) {
+                days.add(new ForecastSnapshot.Day(
+                        cursor.getLong(INDEX_WEATHER_DATE),
+                        cursor.getInt(INDEX_WEATHER_CONDITION_ID),
+                        cursor.getDouble(INDEX_WEATHER_MIN_TEMP),
+                        cursor.getDouble(INDEX_WEATHER_MAX_TEMP),
+                        cursor.getFloat(INDEX_WEATHER_HUMIDITY),
+                        cursor.getFloat(INDEX_WEATHER_PRESSURE),
+                        cursor.getFloat(INDEX_WEATHER_WIND_SPEED),
+                        cursor.getFloat(INDEX_WEATHER_DEGREES)));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return days;
+    }
+}
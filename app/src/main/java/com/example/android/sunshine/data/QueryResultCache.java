@@ -0,0 +1,377 @@
+package com.example.android.sunshine.data;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.v4.util.LruCache;
+
+import java.util.Arrays;
+
+/**
+ * Results of recent provider queries, so the screens, notification and widgets asking for the same
+ * weather within a short time share one SQLite query. Results are kept as immutable snapshots of
+ * their rows in an LRU cache bounded by an estimate of their memory, every hit gets its own
+ * read-only cursor over the shared snapshot.
+ * <p/>
+ * The provider invalidates results from its write paths after they committed: writes of some days
+ * drop the results of those days and every result spanning several days, writes of locations drop
+ * everything. A generation counter keeps a query that read the old state from being stored after
+ * the write that changed it invalidated the cache.
+ */
+public final class QueryResultCache {
+
+    // Upper bound of the estimated memory of all cached results.
+    private static final int MAX_CACHE_BYTES = 256 * 1024;
+
+    // Results larger than this share of the cache aren't cached, they would evict everything.
+    private static final int MAX_RESULT_BYTES = MAX_CACHE_BYTES / 8;
+
+    // Rough size of a boxed value and its slot in the row array.
+    private static final int VALUE_OVERHEAD_BYTES = 24;
+
+    /** Date of results that span several days or don't contain weather. */
+    static final long NO_DATE = -1;
+
+    private final LruCache<Key, Snapshot> mResults = new LruCache<Key, Snapshot>(MAX_CACHE_BYTES) {
+        @Override
+        protected int sizeOf(Key key, Snapshot snapshot) {
+            return snapshot.sizeBytes;
+        }
+    };
+
+    // Incremented by every invalidation, guarded by this.
+    private long mGeneration;
+
+    /**
+     * Identifies a query by everything that changes its result.
+     */
+    static final class Key {
+        final boolean isWeather;
+        final long date;
+
+        private final String mUri;
+        private final String[] mProjection;
+        private final String mSelection;
+        private final String[] mSelectionArgs;
+        private final String mSortOrder;
+        private final int mHashCode;
+
+        /**
+         * @param isWeather true if the result contains weather, false for locations.
+         * @param date      Date of a single day query, {@link #NO_DATE} otherwise.
+         */
+        Key(boolean isWeather, long date, Uri uri, String[] projection, String selection,
+            String[] selectionArgs, String sortOrder) {
+            this.isWeather = isWeather;
+            this.date = date;
+            mUri = uri.toString();
+            // Copied, callers may reuse their arrays for the next query.
+            mProjection = projection == null ? null : projection.clone();
+            mSelection = selection;
+            mSelectionArgs = selectionArgs == null ? null : selectionArgs.clone();
+            mSortOrder = sortOrder;
+
+            int hashCode = mUri.hashCode();
+            hashCode = 31 * hashCode + Arrays.hashCode(mProjection);
+            hashCode = 31 * hashCode + (selection == null ? 0 : selection.hashCode());
+            hashCode = 31 * hashCode + Arrays.hashCode(mSelectionArgs);
+            hashCode = 31 * hashCode + (sortOrder == null ? 0 : sortOrder.hashCode());
+            mHashCode = hashCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+
+            Key other = (Key) o;
+            return mHashCode == other.mHashCode
+                    && mUri.equals(other.mUri)
+                    && Arrays.equals(mProjection, other.mProjection)
+                    && equalsOrNull(mSelection, other.mSelection)
+                    && Arrays.equals(mSelectionArgs, other.mSelectionArgs)
+                    && equalsOrNull(mSortOrder, other.mSortOrder);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+
+        private static boolean equalsOrNull(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+    /**
+     * Returns a cursor over the cached result of a query.
+     *
+     * @param key Query to look up.
+     * @return    A new cursor positioned before the first row, null if the result isn't cached.
+     */
+    Cursor get(Key key) {
+        Snapshot snapshot = mResults.get(key);
+        return snapshot == null ? null : new SnapshotCursor(snapshot);
+    }
+
+    /**
+     * @return Generation to pass to {@link #put}, read before the query runs.
+     */
+    synchronized long getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Stores the result of a query, unless it is too large or the data changed since the query
+     * started. The cursor is read to the end.
+     *
+     * @param key        Query of the result.
+     * @param cursor     Result of the query, positioned before the first row.
+     * @param generation Value of {@link #getGeneration()} before the query ran.
+     * @return           A cursor positioned before the first row, either over the stored snapshot
+     *                   or the given cursor if the result wasn't stored.
+     */
+    Cursor put(Key key, Cursor cursor, long generation) {
+        Snapshot snapshot = Snapshot.read(cursor);
+        if (snapshot == null) {
+            // Too large, the rows are still in the window of the cursor.
+            cursor.moveToPosition(-1);
+            return cursor;
+        }
+        cursor.close();
+
+        synchronized (this) {
+            if (generation == mGeneration) {
+                mResults.put(key, snapshot);
+            }
+        }
+        return new SnapshotCursor(snapshot);
+    }
+
+    /**
+     * Drops the results containing the weather of some days.
+     *
+     * @param dates Normalized UTC dates of the changed days.
+     * @param count Number of dates to read from the array.
+     */
+    synchronized void invalidateDates(long[] dates, int count) {
+        mGeneration++;
+        for (Key key : mResults.snapshot().keySet()) {
+            if (!key.isWeather) continue;
+
+            boolean changed = key.date == NO_DATE;
+            for (int i = 0; i < count && !changed; i++) {
+                changed = dates[i] == key.date;
+            }
+            if (changed) {
+                mResults.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Drops the results containing weather of any day.
+     */
+    synchronized void invalidateWeather() {
+        mGeneration++;
+        for (Key key : mResults.snapshot().keySet()) {
+            if (key.isWeather) {
+                mResults.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Drops every result. Queries of weather may select by location, so any change of a location
+     * invalidates them too.
+     */
+    synchronized void invalidateAll() {
+        mGeneration++;
+        mResults.evictAll();
+    }
+
+    /**
+     * @return Number of queries answered from the cache.
+     */
+    public long getHitCount() {
+        return mResults.hitCount();
+    }
+
+    /**
+     * @return Number of queries that had to run SQLite.
+     */
+    public long getMissCount() {
+        return mResults.missCount();
+    }
+
+    /**
+     * @return Estimated memory of the cached results in bytes.
+     */
+    public int getSizeBytes() {
+        return mResults.size();
+    }
+
+    @Override
+    public String toString() {
+        return "QueryResultCache[hits=" + getHitCount() + ", misses=" + getMissCount() +
+                ", evictions=" + mResults.evictionCount() + ", bytes=" + getSizeBytes() + "]";
+    }
+
+    /**
+     * Immutable rows of a query result. Values keep the type SQLite returned them in.
+     */
+    private static final class Snapshot {
+        final String[] columnNames;
+        final Object[][] rows;
+        final int sizeBytes;
+
+        private Snapshot(String[] columnNames, Object[][] rows, int sizeBytes) {
+            this.columnNames = columnNames;
+            this.rows = rows;
+            this.sizeBytes = sizeBytes;
+        }
+
+        /**
+         * Copies the rows of a cursor.
+         *
+         * @return The snapshot, null if it would be larger than {@link #MAX_RESULT_BYTES}.
+         */
+        static Snapshot read(Cursor cursor) {
+            String[] columnNames = cursor.getColumnNames();
+            int columnCount = columnNames.length;
+            Object[][] rows = new Object[cursor.getCount()][];
+            int sizeBytes = rows.length * (columnCount + 1) * VALUE_OVERHEAD_BYTES;
+
+            for (int row = 0; cursor.moveToNext(); row++) {
+                Object[] values = new Object[columnCount];
+                for (int column = 0; column < columnCount; column++) {
+                    switch (cursor.getType(column)) {
+                        case Cursor.FIELD_TYPE_INTEGER:
+                            values[column] = cursor.getLong(column);
+                            break;
+                        case Cursor.FIELD_TYPE_FLOAT:
+                            values[column] = cursor.getDouble(column);
+                            break;
+                        case Cursor.FIELD_TYPE_STRING:
+                            String string = cursor.getString(column);
+                            sizeBytes += string.length() * 2;
+                            values[column] = string;
+                            break;
+                        case Cursor.FIELD_TYPE_BLOB:
+                            byte[] blob = cursor.getBlob(column);
+                            sizeBytes += blob.length;
+                            values[column] = blob;
+                            break;
+                        default:
+                            values[column] = null;
+                    }
+                }
+                rows[row] = values;
+
+                if (sizeBytes > MAX_RESULT_BYTES) return null;
+            }
+
+            return new Snapshot(columnNames, rows, Math.max(sizeBytes, 1));
+        }
+    }
+
+    /**
+     * Read-only cursor over a snapshot, behaves like a MatrixCursor with the same rows. Values
+     * are converted between types the same way.
+     */
+    private static final class SnapshotCursor extends AbstractCursor {
+        private final Snapshot mSnapshot;
+
+        SnapshotCursor(Snapshot snapshot) {
+            mSnapshot = snapshot;
+        }
+
+        private Object get(int column) {
+            if (column < 0 || column >= mSnapshot.columnNames.length) {
+                throw new IndexOutOfBoundsException("Requested column: " + column
+                        + ", # of columns: " + mSnapshot.columnNames.length);
+            }
+            if (mPos < 0 || mPos >= mSnapshot.rows.length) {
+                throw new IndexOutOfBoundsException("Cursor is not on a row: " + mPos);
+            }
+            return mSnapshot.rows[mPos][column];
+        }
+
+        @Override
+        public int getCount() {
+            return mSnapshot.rows.length;
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return mSnapshot.columnNames;
+        }
+
+        @Override
+        public String getString(int column) {
+            Object value = get(column);
+            return value == null ? null : value.toString();
+        }
+
+        @Override
+        public short getShort(int column) {
+            Object value = get(column);
+            if (value == null) return 0;
+            if (value instanceof Number) return ((Number) value).shortValue();
+            return Short.parseShort(value.toString());
+        }
+
+        @Override
+        public int getInt(int column) {
+            Object value = get(column);
+            if (value == null) return 0;
+            if (value instanceof Number) return ((Number) value).intValue();
+            return Integer.parseInt(value.toString());
+        }
+
+        @Override
+        public long getLong(int column) {
+            Object value = get(column);
+            if (value == null) return 0;
+            if (value instanceof Number) return ((Number) value).longValue();
+            return Long.parseLong(value.toString());
+        }
+
+        @Override
+        public float getFloat(int column) {
+            Object value = get(column);
+            if (value == null) return 0.0f;
+            if (value instanceof Number) return ((Number) value).floatValue();
+            return Float.parseFloat(value.toString());
+        }
+
+        @Override
+        public double getDouble(int column) {
+            Object value = get(column);
+            if (value == null) return 0.0d;
+            if (value instanceof Number) return ((Number) value).doubleValue();
+            return Double.parseDouble(value.toString());
+        }
+
+        @Override
+        public byte[] getBlob(int column) {
+            Object value = get(column);
+            return value instanceof byte[] ? (byte[]) value : null;
+        }
+
+        @Override
+        public int getType(int column) {
+            Object value = get(column);
+            if (value == null) return Cursor.FIELD_TYPE_NULL;
+            if (value instanceof Double) return Cursor.FIELD_TYPE_FLOAT;
+            if (value instanceof Long) return Cursor.FIELD_TYPE_INTEGER;
+            if (value instanceof byte[]) return Cursor.FIELD_TYPE_BLOB;
+            return Cursor.FIELD_TYPE_STRING;
+        }
+
+        @Override
+        public boolean isNull(int column) {
+            return get(column) == null;
+        }
+    }
+}
@@ -36,6 +36,16 @@ public class SunshinePreferences {
     public static final String PREF_COORD_LAT = "coord_lat";
     public static final String PREF_COORD_LONG = "coord_long";
 
+    /*
+     * State of the adaptive sync schedule: how often a sync finds changed weather (a moving
+     * average between 0 and 1) and how many locations the last sync fetched.
+     */
+    public static final String PREF_SYNC_CHANGE_RATE = "sync_change_rate";
+    public static final String PREF_SYNC_LOCATION_COUNT = "sync_location_count";
+
+    // Time the forecast archive was last maintained, see getLastArchiveMaintenanceTime.
+    public static final String PREF_LAST_ARCHIVE_MAINTENANCE = "last_archive_maintenance";
+
     /*
      * Before you implement methods to return your REAL preference for location,
      * we provide some default values to work with.
@@ -274,4 +284,79 @@ public class SunshinePreferences {
         editor.putLong(lastNotificationKey, timeOfNotification);
         editor.apply();
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns how often a sync finds changed weather, as learned by the sync scheduler.
+     *
+     * @param context      Used to access SharedPreferences.
+     * @param defaultValue Returned if nothing was learned yet.
+     * @return             Moving average of changed syncs between 0 and 1.
+     */
+    public static float getSyncChangeRate(Context context, float defaultValue) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        return sp.getFloat(PREF_SYNC_CHANGE_RATE, defaultValue);
+    }
+
+    /**
+     * Returns the number of locations fetched by the last sync.
+     *
+     * @param context Used to access SharedPreferences.
+     * @return        Number of locations, 1 if there was no sync yet.
+     */
+    public static int getSyncLocationCount(Context context) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        return sp.getInt(PREF_SYNC_LOCATION_COUNT, 1);
+    }
+
+    /**
+     * Saves what the sync scheduler learned from a sync.
+     *
+     * @param context       Used to access SharedPreferences.
+     * @param changeRate    Moving average of changed syncs between 0 and 1.
+     * @param locationCount Number of locations fetched by the sync.
+     */
+    public static void saveSyncStatistics(Context context, float changeRate, int locationCount) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        SharedPreferences.Editor editor = sp.edit();
+        editor.putFloat(PREF_SYNC_CHANGE_RATE, changeRate);
+        editor.putInt(PREF_SYNC_LOCATION_COUNT, locationCount);
+        editor.apply();
+    }
+
+    /**
+     * Returns how many months of past forecasts are kept in the archive.
+     *
+     * @param context Used to access SharedPreferences.
+     * @return        Retention of the archive in months.
+     */
+    public static int getArchiveRetentionMonths(Context context) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        String key = context.getString(R.string.pref_archive_retention_key);
+        String defaultValue = context.getString(R.string.pref_archive_retention_default);
+        return Integer.parseInt(sp.getString(key, defaultValue));
+    }
+
+    /**
+     * Returns when the forecast archive was last maintained.
+     *
+     * @param context Used to access SharedPreferences.
+     * @return        Milliseconds since the epoch, 0 if it never was.
+     */
+    public static long getLastArchiveMaintenanceTime(Context context) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        return sp.getLong(PREF_LAST_ARCHIVE_MAINTENANCE, 0);
+    }
+
+    /**
+     * Saves when the forecast archive was last maintained.
+     *
+     * @param context         Used to access SharedPreferences.
+     * @param maintenanceTime Milliseconds since the epoch.
+     */
+    public static void saveLastArchiveMaintenanceTime(Context context, long maintenanceTime) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        SharedPreferences.Editor editor = sp.edit();
+        editor.putLong(PREF_LAST_ARCHIVE_MAINTENANCE, maintenanceTime);
+        editor.apply();
+    }
+}
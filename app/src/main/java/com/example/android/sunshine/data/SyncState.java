@@ -0,0 +1,138 @@
+package com.example.android.sunshine.data;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.sunshine.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+/**
+ * Small record of what is stored and when it was synced, so startup can decide whether to sync
+ * without querying the weather table. WeatherProvider rewrites it after every committed write of
+ * weather, the sync sets the time of the last successful sync.
+ * <p/>
+ * Kept in its own SharedPreferences file, one newest date and row count per location setting.
+ * A location without an entry has no stored weather, as far as the record knows.
+ */
+public final class SyncState {
+
+    private static final String PREFS_NAME = "sync_state";
+
+    private static final String KEY_LAST_SYNC_TIME = "last_sync_time";
+    private static final String KEY_PREFIX_NEWEST_DATE = "newest_date:";
+    private static final String KEY_PREFIX_ROW_COUNT = "row_count:";
+
+    // Newest date and row count of every location, answered by the index on location and date.
+    private static final String SQL_LOCATION_SUMMARY = "SELECT "
+            + LocationEntry.TABLE_NAME + "." + LocationEntry.COLUMN_LOCATION_SETTING + ", "
+            + "MAX(" + WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_DATE + "), "
+            + "COUNT(" + WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID + ")"
+            + " FROM " + LocationEntry.TABLE_NAME
+            + " JOIN " + WeatherEntry.TABLE_NAME
+            + " ON " + WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_LOC_KEY
+            + " = " + LocationEntry.TABLE_NAME + "." + LocationEntry._ID
+            + " GROUP BY " + LocationEntry.TABLE_NAME + "." + LocationEntry._ID;
+
+    // Indexes of the SQL_LOCATION_SUMMARY columns.
+    private static final int INDEX_LOCATION_SETTING = 0;
+    private static final int INDEX_NEWEST_DATE = 1;
+    private static final int INDEX_ROW_COUNT = 2;
+
+    private SyncState() {
+    }
+
+    /**
+     * Returns true if there is no weather for today onwards stored for the location.
+     *
+     * @param context         Used to access the record.
+     * @param locationSetting Location string, see {@link SunshinePreferences}.
+     * @return                true if the location must be synced to show a forecast.
+     */
+    public static boolean needsSync(Context context, String locationSetting) {
+        long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+        return getNewestDate(context, locationSetting) < today;
+    }
+
+    /**
+     * Returns the newest date stored for a location.
+     *
+     * @param context         Used to access the record.
+     * @param locationSetting Location string, see {@link SunshinePreferences}.
+     * @return                Normalized date, Long.MIN_VALUE if nothing is stored.
+     */
+    public static long getNewestDate(Context context, String locationSetting) {
+        return getPreferences(context)
+                .getLong(KEY_PREFIX_NEWEST_DATE + locationSetting, Long.MIN_VALUE);
+    }
+
+    /**
+     * Returns the number of weather rows stored for a location.
+     *
+     * @param context         Used to access the record.
+     * @param locationSetting Location string, see {@link SunshinePreferences}.
+     * @return                Number of rows, 0 if nothing is stored.
+     */
+    public static int getRowCount(Context context, String locationSetting) {
+        return getPreferences(context).getInt(KEY_PREFIX_ROW_COUNT + locationSetting, 0);
+    }
+
+    /**
+     * Returns the time of the last sync that received weather for any location.
+     *
+     * @param context Used to access the record.
+     * @return        Milliseconds since the epoch, 0 if there was no sync yet.
+     */
+    public static long getLastSyncTime(Context context) {
+        return getPreferences(context).getLong(KEY_LAST_SYNC_TIME, 0);
+    }
+
+    /**
+     * Saves the time of a sync that received weather.
+     *
+     * @param context  Used to access the record.
+     * @param syncTime Milliseconds since the epoch.
+     */
+    public static synchronized void setLastSyncTime(Context context, long syncTime) {
+        getPreferences(context).edit().putLong(KEY_LAST_SYNC_TIME, syncTime).apply();
+    }
+
+    /**
+     * Rewrites the newest date and row count of every location. Must be called after a write of
+     * weather is committed.
+     *
+     * @param context Used to access the record.
+     * @param db      Database to read from.
+     */
+    static synchronized void update(Context context, SQLiteDatabase db) {
+        SharedPreferences preferences = getPreferences(context);
+        long lastSyncTime = preferences.getLong(KEY_LAST_SYNC_TIME, 0);
+
+        // Cleared first, so deleted locations don't keep their entries.
+        SharedPreferences.Editor editor = preferences.edit().clear();
+        if (lastSyncTime != 0) {
+            editor.putLong(KEY_LAST_SYNC_TIME, lastSyncTime);
+        }
+
+        Cursor cursor = db.rawQuery(SQL_LOCATION_SUMMARY, null);
+        try {
+            while (cursor.moveToNext()) {
+                String locationSetting = cursor.getString(INDEX_LOCATION_SETTING);
+                editor.putLong(KEY_PREFIX_NEWEST_DATE + locationSetting,
+                        cursor.getLong(INDEX_NEWEST_DATE));
+                editor.putInt(KEY_PREFIX_ROW_COUNT + locationSetting,
+                        cursor.getInt(INDEX_ROW_COUNT));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        editor.apply();
+    }
+
+    private static SharedPreferences getPreferences(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
@@ -0,0 +1,321 @@
+package com.example.android.sunshine.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.example.android.sunshine.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Archive of superseded forecasts, kept for verification against what the weather turned out to
+ * be. Before a stored day is replaced by a new forecast or deleted because it expired, its row is
+ * copied into the partition of its month, so the live weather table only ever holds the current
+ * forecast.
+ * <p/>
+ * Every month of forecast dates has its own table, named {@link #PARTITION_PREFIX} plus the month
+ * as yyyyMM, listed in the {@link #TABLE_PARTITIONS} registry. Rows carry the location setting
+ * instead of the location key, so history survives a location being deleted and saved again.
+ * Expired partitions are dropped as a whole and finished ones compacted by {@link #maintain}.
+ * <p/>
+ * An instance archives the rows of one write transaction and must be closed before it ends.
+ */
+final class WeatherArchive {
+
+    private static final String TAG = WeatherArchive.class.getSimpleName();
+
+    /** Registry of the partitions, one row per month. */
+    static final String TABLE_PARTITIONS = "weather_archive_partition";
+    private static final String COLUMN_PARTITION_NAME = "name";
+    private static final String COLUMN_PARTITION_MONTH = "month";
+    private static final String COLUMN_PARTITION_COMPACTED = "compacted";
+
+    /** Prefix of the partition tables. */
+    static final String PARTITION_PREFIX = "weather_archive_";
+
+    // Columns of a partition that aren't copied from the weather table.
+    static final String COLUMN_LOCATION_SETTING = LocationEntry.COLUMN_LOCATION_SETTING;
+    static final String COLUMN_ARCHIVED_AT = "archived_at";
+
+    // Columns copied from the weather table as they are.
+    private static final String WEATHER_COLUMNS = WeatherEntry.COLUMN_DATE + ", " +
+            WeatherEntry.COLUMN_WEATHER_ID + ", " +
+            WeatherEntry.COLUMN_MIN_TEMP + ", " +
+            WeatherEntry.COLUMN_MAX_TEMP + ", " +
+            WeatherEntry.COLUMN_HUMIDITY + ", " +
+            WeatherEntry.COLUMN_PRESSURE + ", " +
+            WeatherEntry.COLUMN_WIND_SPEED + ", " +
+            WeatherEntry.COLUMN_DEGREES;
+
+    // Selection of the stored weather of one day of a location.
+    private static final String DAY_SELECTION =
+            WeatherEntry.COLUMN_LOC_KEY + " = ? AND " + WeatherEntry.COLUMN_DATE + " = ?";
+
+    // Partitions of months that ended at least this long ago are compacted.
+    private static final int COMPACT_AFTER_MONTHS = 1;
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    private final SQLiteDatabase mDb;
+    private final long mArchivedAt;
+
+    // Statements copying a single stored day, one per partition written by this instance.
+    private final Map<Integer, SQLiteStatement> mArchiveDayStatements = new HashMap<>();
+
+    /**
+     * @param db         Database, inside the write transaction that supersedes the rows.
+     * @param archivedAt Time the rows are superseded, milliseconds since the epoch.
+     */
+    WeatherArchive(SQLiteDatabase db, long archivedAt) {
+        mDb = db;
+        mArchivedAt = archivedAt;
+    }
+
+    /**
+     * Copies the stored weather of a day into the archive. Only called for days that are stored,
+     * so partitions are only created for months that have superseded days.
+     *
+     * @param locationId Row id of the location.
+     * @param date       Normalized UTC date of the day.
+     */
+    void archiveDay(long locationId, long date) {
+        int month = getMonth(date);
+        SQLiteStatement statement = mArchiveDayStatements.get(month);
+        if (statement == null) {
+            String partition = ensurePartition(mDb, month);
+            statement = mDb.compileStatement(buildArchiveSql(partition, DAY_SELECTION));
+            mArchiveDayStatements.put(month, statement);
+        }
+
+        statement.bindLong(1, mArchivedAt);
+        statement.bindLong(2, locationId);
+        statement.bindLong(3, date);
+        statement.executeInsert();
+    }
+
+    /**
+     * Copies the stored weather matching a selection into the archive.
+     *
+     * @param selection     Selection on the weather table, null for every row.
+     * @param selectionArgs Arguments of the selection.
+     */
+    void archiveWhere(String selection, String[] selectionArgs) {
+        if (selection == null) selection = "1";
+
+        List<Integer> months = new ArrayList<>();
+        Cursor cursor = mDb.query(true, WeatherEntry.TABLE_NAME,
+                new String[] {WeatherEntry.COLUMN_DATE}, selection, selectionArgs,
+                null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                int month = getMonth(cursor.getLong(0));
+                if (!months.contains(month)) {
+                    months.add(month);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        for (int month : months) {
+            String partition = ensurePartition(mDb, month);
+            String[] args = new String[(selectionArgs == null ? 0 : selectionArgs.length) + 1];
+            args[0] = Long.toString(mArchivedAt);
+            if (selectionArgs != null) {
+                System.arraycopy(selectionArgs, 0, args, 1, selectionArgs.length);
+            }
+
+            // Bounds of the month are computed here, not given by the caller, so they are inlined.
+            mDb.execSQL(buildArchiveSql(partition, "(" + selection + ")" +
+                    " AND " + WeatherEntry.COLUMN_DATE + " >= " + getMonthStart(month) +
+                    " AND " + WeatherEntry.COLUMN_DATE + " < " + getMonthStart(month + 1)),
+                    args);
+        }
+    }
+
+    /**
+     * Releases the compiled statements.
+     */
+    void close() {
+        for (SQLiteStatement statement : mArchiveDayStatements.values()) {
+            statement.close();
+        }
+        mArchiveDayStatements.clear();
+    }
+
+    /**
+     * Applies the retention policy: drops the partitions of months older than the retention and
+     * compacts the ones that ended. Every partition is handled in its own transaction, so syncs
+     * running at the same time only wait for one partition.
+     * <p/>
+     * Compaction keeps the newest forecast of every day per location and lead time in whole days,
+     * which is what verification needs, and drops the intermediate updates of the same day.
+     * Pages freed by dropped and compacted partitions are reused by the next ones, the database
+     * isn't vacuumed.
+     *
+     * @param db              The writable database.
+     * @param retentionMonths Months of forecast dates to keep, before the current one.
+     * @param now             Current time, milliseconds since the epoch.
+     */
+    static void maintain(SQLiteDatabase db, int retentionMonths, long now) {
+        int currentMonth = getMonth(now);
+        int oldestKeptMonth = addMonths(currentMonth, -retentionMonths);
+        int newestCompactedMonth = addMonths(currentMonth, -COMPACT_AFTER_MONTHS);
+
+        Cursor cursor = db.query(TABLE_PARTITIONS,
+                new String[] {COLUMN_PARTITION_NAME, COLUMN_PARTITION_MONTH},
+                COLUMN_PARTITION_MONTH + " < ? OR (" + COLUMN_PARTITION_MONTH + " <= ? AND " +
+                        COLUMN_PARTITION_COMPACTED + " = 0)",
+                new String[] {Integer.toString(oldestKeptMonth),
+                        Integer.toString(newestCompactedMonth)},
+                null, null, COLUMN_PARTITION_MONTH);
+
+        int dropped = 0;
+        int compacted = 0;
+        try {
+            while (cursor.moveToNext()) {
+                String partition = cursor.getString(0);
+                int month = cursor.getInt(1);
+
+                db.beginTransaction();
+                try {
+                    if (month < oldestKeptMonth) {
+                        db.execSQL("DROP TABLE IF EXISTS " + partition);
+                        db.delete(TABLE_PARTITIONS, COLUMN_PARTITION_NAME + " = ?",
+                                new String[] {partition});
+                        dropped++;
+                    } else {
+                        compactPartition(db, partition);
+                        compacted++;
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        if (dropped != 0 || compacted != 0) {
+            Log.d(TAG, "Dropped " + dropped + " and compacted " + compacted + " partitions");
+        }
+    }
+
+    private static void compactPartition(SQLiteDatabase db, String partition) {
+        db.execSQL("DELETE FROM " + partition + " WHERE _id NOT IN (" +
+                "SELECT MAX(_id) FROM " + partition + " GROUP BY " +
+                COLUMN_LOCATION_SETTING + ", " +
+                WeatherEntry.COLUMN_DATE + ", " +
+                "(" + WeatherEntry.COLUMN_DATE + " - " + COLUMN_ARCHIVED_AT + ") / " +
+                SunshineDateUtils.DAY_IN_MILLIS + ")");
+
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_PARTITION_COMPACTED, 1);
+        db.update(TABLE_PARTITIONS, values,
+                COLUMN_PARTITION_NAME + " = ?", new String[] {partition});
+    }
+
+    /**
+     * Creates the partition of a month if it doesn't exist yet. A compacted partition that gets
+     * new rows, e.g. after a long time without sync, is compacted again.
+     *
+     * @return Name of the partition table.
+     */
+    private static String ensurePartition(SQLiteDatabase db, int month) {
+        String partition = PARTITION_PREFIX + month;
+
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + partition + " (" +
+                "_id INTEGER PRIMARY KEY, " +
+                COLUMN_LOCATION_SETTING + " TEXT NOT NULL, " +
+                WeatherEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
+                WeatherEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL, " +
+                WeatherEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
+                WeatherEntry.COLUMN_MAX_TEMP + " REAL NOT NULL, " +
+                WeatherEntry.COLUMN_HUMIDITY + " REAL NOT NULL, " +
+                WeatherEntry.COLUMN_PRESSURE + " REAL NOT NULL, " +
+                WeatherEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, " +
+                WeatherEntry.COLUMN_DEGREES + " REAL NOT NULL, " +
+                COLUMN_ARCHIVED_AT + " INTEGER NOT NULL);");
+        // Verification reports read the history of one site.
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + partition + "_site_index ON " + partition +
+                " (" + COLUMN_LOCATION_SETTING + ", " + WeatherEntry.COLUMN_DATE + ");");
+
+        db.execSQL("INSERT OR IGNORE INTO " + TABLE_PARTITIONS + " (" +
+                COLUMN_PARTITION_NAME + ", " + COLUMN_PARTITION_MONTH + ") VALUES (?, ?)",
+                new Object[] {partition, month});
+        db.execSQL("UPDATE " + TABLE_PARTITIONS + " SET " + COLUMN_PARTITION_COMPACTED +
+                " = 0 WHERE " + COLUMN_PARTITION_NAME + " = ? AND " +
+                COLUMN_PARTITION_COMPACTED + " != 0", new Object[] {partition});
+
+        return partition;
+    }
+
+    /**
+     * Builds a statement copying weather rows into a partition. The first parameter is the
+     * archive time, the parameters of the selection follow.
+     */
+    private static String buildArchiveSql(String partition, String selection) {
+        return "INSERT INTO " + partition + " (" + COLUMN_LOCATION_SETTING + ", " +
+                WEATHER_COLUMNS + ", " + COLUMN_ARCHIVED_AT + ") " +
+                "SELECT (SELECT " + LocationEntry.COLUMN_LOCATION_SETTING +
+                " FROM " + LocationEntry.TABLE_NAME +
+                " WHERE " + LocationEntry.TABLE_NAME + "." + LocationEntry._ID + " = " +
+                WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_LOC_KEY + "), " +
+                WEATHER_COLUMNS + ", ? FROM " + WeatherEntry.TABLE_NAME +
+                " WHERE " + selection;
+    }
+
+    /**
+     * Creates the partition registry, partitions themselves are created on first use.
+     *
+     * @param db The database, inside the create or upgrade transaction.
+     */
+    static void createRegistry(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_PARTITIONS + " (" +
+                COLUMN_PARTITION_NAME + " TEXT PRIMARY KEY, " +
+                COLUMN_PARTITION_MONTH + " INTEGER NOT NULL, " +
+                COLUMN_PARTITION_COMPACTED + " INTEGER NOT NULL DEFAULT 0);");
+    }
+
+    /**
+     * @param timeMillis Time in milliseconds since the epoch.
+     * @return           UTC month of the time as yyyyMM.
+     */
+    static int getMonth(long timeMillis) {
+        Calendar calendar = Calendar.getInstance(UTC);
+        calendar.setTimeInMillis(timeMillis);
+        return calendar.get(Calendar.YEAR) * 100 + calendar.get(Calendar.MONTH) + 1;
+    }
+
+    /**
+     * @param month Month as yyyyMM, a month of 13 is January of the next year.
+     * @return      Start of the month in UTC, milliseconds since the epoch.
+     */
+    private static long getMonthStart(int month) {
+        Calendar calendar = Calendar.getInstance(UTC);
+        calendar.clear();
+        calendar.set(month / 100, month % 100 - 1, 1);
+        return calendar.getTimeInMillis();
+    }
+
+    /**
+     * @param month  Month as yyyyMM.
+     * @param months Months to add, negative to go back.
+     * @return       The resulting month as yyyyMM.
+     */
+    static int addMonths(int month, int months) {
+        int index = (month / 100) * 12 + month % 100 - 1 + months;
+        return (index / 12) * 100 + index % 12 + 1;
+    }
+}
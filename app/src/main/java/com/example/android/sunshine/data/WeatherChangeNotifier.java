@@ -0,0 +1,111 @@
+package com.example.android.sunshine.data;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Coalesces change notifications of weather. Changed dates are collected for a short window
+ * and then sent as one notification per date URI plus one on
+ * {@link WeatherContract.WeatherEntry#CHANGES_URI}, so a sync writing several batches reloads
+ * every screen once.
+ * <p/>
+ * Date URIs wake DetailActivity only for its own day. The forecast list observes the changes
+ * URI, which isn't a parent of the date URIs, so it gets a single notification per window.
+ */
+public final class WeatherChangeNotifier {
+
+    // Window in which changes are collected before observers are notified.
+    private static final long COALESCE_WINDOW_MILLIS = 100;
+
+    private static final Handler sHandler = new Handler(Looper.getMainLooper());
+
+    private static final Runnable sFlush = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private static final Set<Long> sChangedDates = new HashSet<>();
+    private static boolean sAllChanged;
+    private static boolean sFlushScheduled;
+    private static ContentResolver sContentResolver;
+
+    private WeatherChangeNotifier() {
+    }
+
+    /**
+     * Collects the weather of some days as changed.
+     *
+     * @param context Used to notify observers.
+     * @param dates   Normalized UTC dates of the changed days.
+     * @param count   Number of dates to read from the array.
+     */
+    public static synchronized void notifyDatesChanged(Context context, long[] dates, int count) {
+        if (count == 0) return;
+
+        for (int i = 0; i < count; i++) {
+            sChangedDates.add(dates[i]);
+        }
+        scheduleFlush(context);
+    }
+
+    /**
+     * Collects the weather of every day as changed, e.g. after a location was deleted or the
+     * units changed.
+     *
+     * @param context Used to notify observers.
+     */
+    public static synchronized void notifyAllChanged(Context context) {
+        sAllChanged = true;
+        sChangedDates.clear();
+        scheduleFlush(context);
+    }
+
+    private static void scheduleFlush(Context context) {
+        if (sContentResolver == null) {
+            sContentResolver = context.getApplicationContext().getContentResolver();
+        }
+        // Posted once per window, later changes join the pending flush.
+        if (!sFlushScheduled) {
+            sFlushScheduled = true;
+            sHandler.postDelayed(sFlush, COALESCE_WINDOW_MILLIS);
+        }
+    }
+
+    /**
+     * Sends the collected notifications.
+     */
+    private static void flush() {
+        Long[] changedDates;
+        boolean allChanged;
+        ContentResolver contentResolver;
+        synchronized (WeatherChangeNotifier.class) {
+            changedDates = sChangedDates.toArray(new Long[sChangedDates.size()]);
+            allChanged = sAllChanged;
+            contentResolver = sContentResolver;
+            sChangedDates.clear();
+            sAllChanged = false;
+            sFlushScheduled = false;
+        }
+
+        if (allChanged) {
+            // The table URI is a parent of every date URI, details of all days re-read.
+            contentResolver.notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+        } else if (changedDates.length != 0) {
+            for (long date : changedDates) {
+                contentResolver.notifyChange(
+                        WeatherContract.WeatherEntry.buildWeatherUriWithDate(date), null);
+            }
+        } else {
+            return;
+        }
+
+        contentResolver.notifyChange(WeatherContract.WeatherEntry.CHANGES_URI, null);
+    }
+}
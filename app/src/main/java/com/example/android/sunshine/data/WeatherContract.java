@@ -1,5 +1,6 @@
 package com.example.android.sunshine.data;
 
+import android.database.DatabaseUtils;
 import android.net.Uri;
 import android.provider.BaseColumns;
 
@@ -15,6 +16,46 @@ public class WeatherContract {
 
     // Possible paths from base uri.
     public static final String PATH_WEATHER = "weather";
+    public static final String PATH_LOCATION = "location";
+
+    // Path only used for notifications, see WeatherEntry.CHANGES_URI.
+    public static final String PATH_WEATHER_CHANGES = "weather_changes";
+
+    // Provider method that drops and compacts old partitions of the forecast archive.
+    public static final String METHOD_MAINTAIN_ARCHIVE = "maintain_archive";
+
+    // Provider method that checkpoints the write-ahead log of the database after a sync.
+    public static final String METHOD_CHECKPOINT = "checkpoint";
+
+    // Defines the structure of location table, one row per saved location.
+    public static final class LocationEntry implements BaseColumns {
+        // The base CONTENT_URI used to query the Location table from the content provider
+        public static final Uri CONTENT_URI = BASE_CONTENT_URI.buildUpon()
+                .appendPath(PATH_LOCATION)
+                .build();
+
+        // Name of the table.
+        public static final String TABLE_NAME = "location";
+
+        // Location string used to query the weather server, e.g. "94043,USA".
+        public static final String COLUMN_LOCATION_SETTING = "location_setting";
+
+        // Coordinates of the city as returned by the weather server, stored as floats.
+        public static final String COLUMN_COORD_LAT = "coord_lat";
+        public static final String COLUMN_COORD_LONG = "coord_long";
+
+        /**
+         * Builds a URI for a single saved location.
+         *
+         * @param id Row id of the location.
+         * @return   Uri of the location.
+         */
+        public static Uri buildLocationUri(long id) {
+            return CONTENT_URI.buildUpon()
+                    .appendPath(Long.toString(id))
+                    .build();
+        }
+    }
 
     // Defines the structure of weather table
     public static final class WeatherEntry implements BaseColumns {
@@ -23,10 +64,21 @@ public class WeatherContract {
                 .appendPath(PATH_WEATHER)
                 .build();
 
+        /*
+         * Notified once after any weather changed, observed by the forecast list. It isn't a
+         * parent of the date URIs, so observers of a single day aren't woken by it.
+         */
+        public static final Uri CHANGES_URI = BASE_CONTENT_URI.buildUpon()
+                .appendPath(PATH_WEATHER_CHANGES)
+                .build();
+
         // Name of the table.
         public static final String TABLE_NAME = "weather";
 
-        // UTC date.
+        // Row id of the location the weather belongs to, foreign key to the Location table.
+        public static final String COLUMN_LOC_KEY = "location_id";
+
+        // Normalized UTC date in milliseconds, stored as an integer.
         public static final String COLUMN_DATE = "date";
 
         // Weather Id.
@@ -72,5 +124,20 @@ public class WeatherContract {
             long normalizedUtcNow = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
             return WeatherContract.WeatherEntry.COLUMN_DATE + " >= " + normalizedUtcNow;
         }
+
+        /**
+         * Returns the selection part of a weather query that limits it to a single location. The
+         * location is looked up by its location setting, so it can be combined with
+         * {@link #getSqlSelectForTodayOnwards()} or used with the date URIs.
+         *
+         * @param locationSetting Location string, see {@link SunshinePreferences}.
+         * @return                The selection part of the weather query for the location
+         */
+        public static String getSqlSelectForLocation(String locationSetting) {
+            return WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = (SELECT " +
+                    LocationEntry._ID + " FROM " + LocationEntry.TABLE_NAME + " WHERE " +
+                    LocationEntry.COLUMN_LOCATION_SETTING + " = " +
+                    DatabaseUtils.sqlEscapeString(locationSetting) + ")";
+        }
     }
 }
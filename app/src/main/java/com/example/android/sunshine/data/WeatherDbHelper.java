@@ -1,29 +1,241 @@
 package com.example.android.sunshine.data;
 
+import android.annotation.TargetApi;
+import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
+import android.util.Log;
 
+import com.example.android.sunshine.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
 
 public class WeatherDbHelper extends SQLiteOpenHelper {
 
+    private static final String TAG = WeatherDbHelper.class.getSimpleName();
+
     /** Name of the database. */
     private static final String DATABASE_NAME = "weather.db";
 
     /** Version number of the database. Incremented after each upgrade. */
-    private static final int DATABASE_VERSION = 3;
+    private static final int DATABASE_VERSION = 7;
+
+    /**
+     * Index that holds every column of the main forecast list, so the today onwards query for a
+     * location is answered by a range scan of the index without reading the table.
+     */
+    private static final String INDEX_WEATHER_LIST = "weather_list_index";
+
+    /**
+     * Pages the write-ahead log may grow to before a commit checkpoints it. Large enough that a
+     * sync commits without checkpointing, the log is checkpointed after the sync instead.
+     */
+    private static final int WAL_AUTOCHECKPOINT_PAGES = 1000;
+
+    /** Size the write-ahead log is truncated to after a checkpoint. */
+    private static final long WAL_SIZE_LIMIT_BYTES = 512 * 1024;
+
+    /** Compiled statements kept per connection, selections of the provider vary by date. */
+    private static final int SQL_CACHE_SIZE = 50;
+
+    /** Used to find the location that existing weather belongs to during upgrade. */
+    private final Context mContext;
+
+    private final boolean mWriteAheadLogging;
 
     public WeatherDbHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME, true);
+    }
+
+    /**
+     * Used by benchmarks to compare journal modes on a database of their own.
+     *
+     * @param context           Used to open the database.
+     * @param name              File name of the database.
+     * @param writeAheadLogging false to keep the rollback journal.
+     */
+    WeatherDbHelper(Context context, String name, boolean writeAheadLogging) {
+        super(context, name, null, DATABASE_VERSION);
+        mContext = context;
+        mWriteAheadLogging = writeAheadLogging;
+    }
+
+    /**
+     * Configures every new connection before the database is created or upgraded.
+     * <p/>
+     * With write-ahead logging, queries of the UI read the last committed state on their own
+     * connections while the sync holds its write transaction, instead of waiting for the single
+     * connection of the rollback journal. Only the database file itself has to be durable, a
+     * commit lost on power loss is synced again, so the log isn't synced on every commit.
+     */
+    @Override
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        // Needed for weather to be deleted together with its location.
+        db.setForeignKeyConstraintsEnabled(true);
+        db.setMaxSqlCacheSize(SQL_CACHE_SIZE);
+
+        if (mWriteAheadLogging) {
+            db.enableWriteAheadLogging();
+            db.execSQL("PRAGMA synchronous = NORMAL;");
+            // Both pragmas return the new value, execSQL doesn't accept rows.
+            DatabaseUtils.longForQuery(db,
+                    "PRAGMA wal_autocheckpoint = " + WAL_AUTOCHECKPOINT_PAGES + ";", null);
+            DatabaseUtils.longForQuery(db,
+                    "PRAGMA journal_size_limit = " + WAL_SIZE_LIMIT_BYTES + ";", null);
+        }
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        // onConfigure isn't called before Jelly Bean.
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN && !db.isReadOnly()) {
+            db.execSQL("PRAGMA foreign_keys = ON;");
+            db.setMaxSqlCacheSize(SQL_CACHE_SIZE);
+            if (mWriteAheadLogging) {
+                db.enableWriteAheadLogging();
+            }
+        }
+    }
+
+    /**
+     * Copies committed pages from the write-ahead log into the database, so reads don't have to
+     * search a long log. Passive, it never waits for readers. Called after syncs on their thread,
+     * never by the UI.
+     */
+    void checkpoint() {
+        if (!mWriteAheadLogging) return;
+
+        Cursor cursor = getWritableDatabase().rawQuery("PRAGMA wal_checkpoint;", null);
+        try {
+            if (cursor.moveToFirst() && cursor.getInt(0) != 0) {
+                Log.d(TAG, "Checkpoint didn't complete, the database was busy");
+            }
+        } finally {
+            cursor.close();
+        }
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
-        final String SQL_CREATE_WEATHER_TABLE =
-                "CREATE TABLE " + WeatherEntry.TABLE_NAME + " (" +
-                WeatherEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
-                WeatherEntry.COLUMN_DATE + " TEXT NOT NULL, " +
+        db.execSQL(buildCreateLocationTableSql());
+        db.execSQL(buildCreateWeatherTableSql(WeatherEntry.TABLE_NAME));
+        db.execSQL(buildCreateWeatherListIndexSql());
+        WeatherArchive.createRegistry(db);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 3) {
+            // Nothing worth keeping in versions that old.
+            db.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+            db.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
+            onCreate(db);
+            return;
+        }
+
+        if (oldVersion < 5) {
+            upgradeToLocationKey(db);
+        }
+
+        if (oldVersion < 6) {
+            // Version 6 archives superseded weather, see WeatherArchive.
+            WeatherArchive.createRegistry(db);
+        }
+
+        if (oldVersion >= 5 && oldVersion < 7) {
+            // Tables created by upgradeToLocationKey already have the version 7 schema.
+            upgradeToInPlaceUpdates(db);
+        }
+    }
+
+    /**
+     * Version 7 updates stored days in place instead of replacing them on conflict, see
+     * WeatherUpsert, and drops AUTOINCREMENT, which kept a sequence row updated on every insert.
+     * SQLite can't drop a conflict clause, so the table is copied with its row ids.
+     *
+     * @param db The database, already inside the upgrade transaction.
+     */
+    private static void upgradeToInPlaceUpdates(SQLiteDatabase db) {
+        final String newTable = WeatherEntry.TABLE_NAME + "_new";
+        final String columns = WeatherEntry._ID + ", " +
+                WeatherEntry.COLUMN_LOC_KEY + ", " +
+                WeatherEntry.COLUMN_DATE + ", " +
+                WeatherEntry.COLUMN_WEATHER_ID + ", " +
+                WeatherEntry.COLUMN_MIN_TEMP + ", " +
+                WeatherEntry.COLUMN_MAX_TEMP + ", " +
+                WeatherEntry.COLUMN_HUMIDITY + ", " +
+                WeatherEntry.COLUMN_PRESSURE + ", " +
+                WeatherEntry.COLUMN_WIND_SPEED + ", " +
+                WeatherEntry.COLUMN_DEGREES;
+
+        db.execSQL(buildCreateWeatherTableSql(newTable));
+        db.execSQL("INSERT INTO " + newTable + " (" + columns + ") " +
+                "SELECT " + columns + " FROM " + WeatherEntry.TABLE_NAME);
+        db.execSQL("DROP TABLE " + WeatherEntry.TABLE_NAME);
+        db.execSQL("ALTER TABLE " + newTable + " RENAME TO " + WeatherEntry.TABLE_NAME);
+        db.execSQL(buildCreateWeatherListIndexSql());
+    }
+
+    /**
+     * Version 4 stores the date as INTEGER instead of TEXT, version 5 adds the location table and
+     * a location key to every weather row. SQLite can't change the type of a column or add a
+     * constraint, so the table is copied into a new one and existing rows are kept. They are
+     * assigned to the location currently set in preferences, which is what they were synced for.
+     *
+     * @param db The database, already inside the upgrade transaction.
+     */
+    private void upgradeToLocationKey(SQLiteDatabase db) {
+        db.execSQL(buildCreateLocationTableSql());
+
+        ContentValues locationValues = new ContentValues();
+        locationValues.put(LocationEntry.COLUMN_LOCATION_SETTING,
+                SunshinePreferences.getPreferredWeatherLocation(mContext));
+        long locationId = db.insert(LocationEntry.TABLE_NAME, null, locationValues);
+
+        final String newTable = WeatherEntry.TABLE_NAME + "_new";
+        final String columns = WeatherEntry._ID + ", " +
+                WeatherEntry.COLUMN_WEATHER_ID + ", " +
+                WeatherEntry.COLUMN_MIN_TEMP + ", " +
+                WeatherEntry.COLUMN_MAX_TEMP + ", " +
+                WeatherEntry.COLUMN_HUMIDITY + ", " +
+                WeatherEntry.COLUMN_PRESSURE + ", " +
+                WeatherEntry.COLUMN_WIND_SPEED + ", " +
+                WeatherEntry.COLUMN_DEGREES;
+
+        db.execSQL(buildCreateWeatherTableSql(newTable));
+        db.execSQL("INSERT INTO " + newTable + " (" + columns + ", " +
+                WeatherEntry.COLUMN_LOC_KEY + ", " + WeatherEntry.COLUMN_DATE + ") " +
+                "SELECT " + columns + ", " + locationId + ", " +
+                "CAST(" + WeatherEntry.COLUMN_DATE + " AS INTEGER)" +
+                " FROM " + WeatherEntry.TABLE_NAME);
+        db.execSQL("DROP TABLE " + WeatherEntry.TABLE_NAME);
+        db.execSQL("ALTER TABLE " + newTable + " RENAME TO " + WeatherEntry.TABLE_NAME);
+        db.execSQL(buildCreateWeatherListIndexSql());
+    }
+
+    private static String buildCreateLocationTableSql() {
+        return "CREATE TABLE " + LocationEntry.TABLE_NAME + " (" +
+                LocationEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                LocationEntry.COLUMN_LOCATION_SETTING + " TEXT NOT NULL, " +
+                LocationEntry.COLUMN_COORD_LAT + " REAL, " +
+                LocationEntry.COLUMN_COORD_LONG + " REAL, " +
+
+                /** Ensured that each location is saved once */
+                " UNIQUE (" + LocationEntry.COLUMN_LOCATION_SETTING + ") ON CONFLICT IGNORE);";
+    }
+
+    private static String buildCreateWeatherTableSql(String tableName) {
+        return "CREATE TABLE " + tableName + " (" +
+                WeatherEntry._ID + " INTEGER PRIMARY KEY," +
+                WeatherEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL REFERENCES " +
+                LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + ") ON DELETE CASCADE, " +
+                WeatherEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
                 WeatherEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL, " +
                 WeatherEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
                 WeatherEntry.COLUMN_MAX_TEMP + " REAL NOT NULL, " +
@@ -32,15 +244,21 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
                 WeatherEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, " +
                 WeatherEntry.COLUMN_DEGREES + " REAL NOT NULL, " +
 
-                /** Ensured that each weather has unique date */
-                " UNIQUE (" + WeatherEntry.COLUMN_DATE + ") ON CONFLICT REPLACE);";
-
-        db.execSQL(SQL_CREATE_WEATHER_TABLE);
+                /** Ensured that each location has one weather per date, written by WeatherUpsert */
+                " UNIQUE (" + WeatherEntry.COLUMN_LOC_KEY + ", " + WeatherEntry.COLUMN_DATE +
+                "));";
     }
 
-    @Override
-    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        db.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
-        onCreate(db);
+    /**
+     * Covering index for the main forecast list: (location_id, date, max, min, weather_id) are
+     * exactly the columns MainActivity filters on, sorts on and selects.
+     */
+    private static String buildCreateWeatherListIndexSql() {
+        return "CREATE INDEX " + INDEX_WEATHER_LIST + " ON " + WeatherEntry.TABLE_NAME + " (" +
+                WeatherEntry.COLUMN_LOC_KEY + ", " +
+                WeatherEntry.COLUMN_DATE + ", " +
+                WeatherEntry.COLUMN_MAX_TEMP + ", " +
+                WeatherEntry.COLUMN_MIN_TEMP + ", " +
+                WeatherEntry.COLUMN_WEATHER_ID + ");";
     }
 }
@@ -18,33 +18,65 @@ package com.example.android.sunshine.data;
 
 import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
+import android.os.Bundle;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.util.Log;
 
 import com.example.android.sunshine.utilities.SunshineDateUtils;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
 /**
  * This class serves as the ContentProvider for all of Sunshine's data. This class allows us to
- * bulkInsert data, query data, and delete data.
+ * bulkInsert weather, save locations, query data, delete data and apply batches of these in one
+ * transaction. Changes of weather are coalesced
+ * by {@link WeatherChangeNotifier} into one notification per changed date plus one on
+ * {@link WeatherContract.WeatherEntry#CHANGES_URI}, which collection cursors use. Every committed write of
+ * weather publishes new {@link ForecastSnapshot}s and updates the {@link SyncState} before observers are notified.
+ * Queries are answered from a {@link QueryResultCache} until a write invalidates their result.
  */
 public class WeatherProvider extends ContentProvider {
 
     public static final int CODE_WEATHER = 100;
     public static final int CODE_WEATHER_WITH_DATE = 101;
+    public static final int CODE_LOCATION = 200;
+    public static final int CODE_LOCATION_WITH_ID = 201;
+
+    private static final String TAG = WeatherProvider.class.getSimpleName();
+
+    // Operations applied by applyBatch between two chances to yield the transaction.
+    private static final int BATCH_YIELD_INTERVAL = 100;
 
     private static final UriMatcher sUriMatcher = buildUriMatcher();
 
     WeatherDbHelper mOpenHelper;
 
+    // Results of recent queries, invalidated by every write below after it committed.
+    final QueryResultCache mQueryCache = new QueryResultCache();
+
+    // Changes of the batch applied by the current thread, null outside of applyBatch.
+    private final ThreadLocal<PendingChanges> mBatchChanges = new ThreadLocal<>();
+
     /**
-     * Creates the UriMatcher that will match each URI to the CODE_WEATHER and
-     * CODE_WEATHER_WITH_DATE constants defined above.
+     * Creates the UriMatcher that will match each URI to the CODE_WEATHER, CODE_WEATHER_WITH_DATE,
+     * CODE_LOCATION and CODE_LOCATION_WITH_ID constants defined above.
      *
-     * @return A UriMatcher that correctly matches the constants for CODE_WEATHER and CODE_WEATHER_WITH_DATE
+     * @return A UriMatcher that correctly matches the constants defined above
      */
     public static UriMatcher buildUriMatcher() {
         final UriMatcher matcher = new UriMatcher(UriMatcher.NO_MATCH);
@@ -56,6 +88,12 @@ public class WeatherProvider extends ContentProvider {
         // This URI looks like content://com.example.android.sunshine/weather/1472214172
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/#", CODE_WEATHER_WITH_DATE);
 
+        // This URI is content://com.example.android.sunshine/location/
+        matcher.addURI(authority, WeatherContract.PATH_LOCATION, CODE_LOCATION);
+
+        // This URI looks like content://com.example.android.sunshine/location/3
+        matcher.addURI(authority, WeatherContract.PATH_LOCATION + "/#", CODE_LOCATION_WITH_ID);
+
         return matcher;
     }
 
@@ -72,45 +110,77 @@ public class WeatherProvider extends ContentProvider {
      * @param values An array of sets of column_name/value pairs to add to the database.
      *               This must not be null.
      *
-     * @return       The number of values that were inserted.
+     * @return       The number of values that are stored now, whether they were inserted, updated
+     *               or already stored with the same values.
      */
     @Override
     public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] values) {
-        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
-
         switch (sUriMatcher.match(uri)) {
             case CODE_WEATHER: {
-                db.beginTransaction();
-                int rowsInserted = 0;
+                PendingChanges changes = beginChanges();
+                int rowsWritten = upsertWeather(values, changes);
+                endChanges(changes);
+                return rowsWritten;
+            }
 
-                try {
-                    for (ContentValues value: values) {
-                        long weatherDate =
-                                value.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
-                        if (!SunshineDateUtils.isDateNormalized(weatherDate)) {
-                            throw new IllegalArgumentException("Date must be normalized to insert");
-                        }
-
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
-                        if (_id != -1) {
-                            rowsInserted++;
-                        }
-                    }
-                    db.setTransactionSuccessful();
-                } finally {
-                    db.endTransaction();
+            default:
+                return super.bulkInsert(uri, values);
+        }
+    }
+
+    /**
+     * Writes weather in one transaction. Days that are already stored for the location are
+     * updated in place, see {@link WeatherUpsert}.
+     *
+     * @param values  Rows to write.
+     * @param changes Receives the dates of the inserted and updated rows.
+     * @return        The number of values that are stored now.
+     */
+    private int upsertWeather(ContentValues[] values, PendingChanges changes) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        db.beginTransaction();
+        int rowsWritten = 0;
+        // Dates of the changed rows, used to notify only the URIs that changed.
+        long[] changedDates = new long[values.length];
+        int changedCount = 0;
+
+        // Days that are updated keep their previous forecast in the archive.
+        WeatherArchive archive = new WeatherArchive(db, System.currentTimeMillis());
+        // Compiled once and re-bound for every row instead of building SQL per write.
+        WeatherUpsert upsert = new WeatherUpsert(db, archive);
+
+        try {
+            for (ContentValues value: values) {
+                long weatherDate = getLongValue(value, WeatherContract.WeatherEntry.COLUMN_DATE);
+                if (!SunshineDateUtils.isDateNormalized(weatherDate)) {
+                    throw new IllegalArgumentException("Date must be normalized to insert");
                 }
+                long locationId = getLongValue(value, WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
 
-                if (rowsInserted > 0) {
-                    getContext().getContentResolver().notifyChange(uri, null);
+                int result;
+                try {
+                    result = upsert.upsert(locationId, weatherDate, value);
+                } catch (SQLException e) {
+                    // Same as SQLiteDatabase.insert, rows that can't be written are skipped.
+                    Log.e(TAG, "Error writing " + value, e);
+                    continue;
                 }
 
-                return rowsInserted;
+                rowsWritten++;
+                if (result != WeatherUpsert.UNCHANGED) {
+                    changedDates[changedCount++] = weatherDate;
+                }
             }
-
-            default:
-                return super.bulkInsert(uri, values);
+            db.setTransactionSuccessful();
+        } finally {
+            upsert.close();
+            archive.close();
+            db.endTransaction();
         }
+
+        // Published by the caller once the outermost transaction committed.
+        changes.addDates(changedDates, changedCount);
+        return rowsWritten;
     }
 
     /**
@@ -125,23 +195,72 @@ public class WeatherProvider extends ContentProvider {
      *                      the values from selectionArgs, in order that they appear in the
      *                      selection.
      * @param sortOrder     How the rows in the cursor should be sorted.
-     * @return              A Cursor containing the results of the query.
+     * @return              A Cursor containing the results of the query. Results that were
+     *                      queried recently and didn't change since are answered by the
+     *                      {@link QueryResultCache}, except inside the transaction of a batch.
      */
     @Override
     public Cursor query(@NonNull Uri uri, String[] projection, String selection,
                         String[] selectionArgs, String sortOrder) {
+        int match = sUriMatcher.match(uri);
+        long date = match == CODE_WEATHER_WITH_DATE
+                ? Long.parseLong(uri.getLastPathSegment())
+                : QueryResultCache.NO_DATE;
+        QueryResultCache.Key cacheKey = new QueryResultCache.Key(
+                match == CODE_WEATHER || match == CODE_WEATHER_WITH_DATE, date,
+                uri, projection, selection, selectionArgs, sortOrder);
 
         Cursor cursor;
+        if (mOpenHelper.getReadableDatabase().inTransaction()) {
+            // Queries of a batch see its writes before they commit, their results may be rolled
+            // back and are neither answered by the cache nor stored in it.
+            cursor = queryDatabase(match, uri, projection, selection, selectionArgs, sortOrder);
+        } else {
+            cursor = mQueryCache.get(cacheKey);
+            if (cursor == null) {
+                // Read first, a write committing during the query keeps its result out of the
+                // cache.
+                long generation = mQueryCache.getGeneration();
+                cursor = queryDatabase(match, uri, projection, selection, selectionArgs,
+                        sortOrder);
+                cursor = mQueryCache.put(cacheKey, cursor, generation);
+            }
+        }
 
-        switch (sUriMatcher.match(uri)) {
+        // Collection cursors of weather aren't woken by the notifications of single days.
+        Uri notificationUri = match == CODE_WEATHER
+                ? WeatherContract.WeatherEntry.CHANGES_URI
+                : uri;
+        cursor.setNotificationUri(getContext().getContentResolver(), notificationUri);
+
+        // The first weather query of the process loads the snapshots read by detail and notification.
+        if (uri.getPathSegments().get(0).equals(WeatherContract.PATH_WEATHER)) {
+            ForecastSnapshotCache.ensureLoaded(mOpenHelper.getReadableDatabase());
+        }
+        return cursor;
+    }
+
+    /**
+     * Runs a query on the database.
+     *
+     * @param match Code of the URI.
+     * @return      A Cursor containing the results of the query.
+     */
+    private Cursor queryDatabase(int match, Uri uri, String[] projection, String selection,
+                                 String[] selectionArgs, String sortOrder) {
+        Cursor cursor;
+
+        switch (match) {
             case CODE_WEATHER_WITH_DATE: {
+                // Selection of the caller, typically a location, narrows the date further.
                 String UTCdate = uri.getLastPathSegment();
-                String[] selectionArguments = new String[] {UTCdate};
+                String[] selectionArguments = appendSelectionArgs(selectionArgs, UTCdate);
 
                 cursor = mOpenHelper.getReadableDatabase().query(
                         WeatherContract.WeatherEntry.TABLE_NAME,
                         projection,
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ",
+                        appendSelection(selection,
+                                WeatherContract.WeatherEntry.COLUMN_DATE + " = ? "),
                         selectionArguments,
                         null,
                         null,
@@ -161,16 +280,29 @@ public class WeatherProvider extends ContentProvider {
                 break;
             }
 
+            case CODE_LOCATION: {
+                cursor = mOpenHelper.getReadableDatabase().query(
+                        WeatherContract.LocationEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder);
+                break;
+            }
+
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
 
-        cursor.setNotificationUri(getContext().getContentResolver(), uri);
         return cursor;
     }
 
     /**
-     * Deletes data at a given URI with optional arguments for more fine tuned deletions.
+     * Deletes data at a given URI with optional arguments for more fine tuned deletions. Weather
+     * deleted by date has expired and is moved into the {@link WeatherArchive}, deleting the whole
+     * table or a location removes its weather for good.
      *
      * @param uri           The full URI to query
      * @param selection     An optional restriction to apply to rows when deleting.
@@ -180,6 +312,7 @@ public class WeatherProvider extends ContentProvider {
     @Override
     public int delete(@NonNull Uri uri, String selection, String[] selectionArgs) {
         int numRowsDeleted;
+        PendingChanges changes = beginChanges();
 
         /*
          * Passing "1" for the selection will delete all rows and return the number of rows
@@ -193,17 +326,114 @@ public class WeatherProvider extends ContentProvider {
                         WeatherContract.WeatherEntry.TABLE_NAME,
                         selection,
                         selectionArgs);
+                if (numRowsDeleted != 0) {
+                    changes.allWeatherChanged = true;
+                }
+                break;
+
+            case CODE_WEATHER_WITH_DATE: {
+                // Days deleted one by one expired, they are moved into the archive.
+                String UTCdate = uri.getLastPathSegment();
+                String[] selectionArguments = appendSelectionArgs(selectionArgs, UTCdate);
+                String dateSelection = appendSelection(selection,
+                        WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ");
+
+                final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+                db.beginTransaction();
+                WeatherArchive archive = new WeatherArchive(db, System.currentTimeMillis());
+                try {
+                    archive.archiveWhere(dateSelection, selectionArguments);
+                    numRowsDeleted = db.delete(
+                            WeatherContract.WeatherEntry.TABLE_NAME,
+                            dateSelection,
+                            selectionArguments);
+                    db.setTransactionSuccessful();
+                } finally {
+                    archive.close();
+                    db.endTransaction();
+                }
+                if (numRowsDeleted != 0) {
+                    changes.addDates(new long[] {Long.parseLong(UTCdate)}, 1);
+                }
                 break;
+            }
+
+            case CODE_LOCATION_WITH_ID: {
+                // Weather of the location is deleted with it by the foreign key.
+                String locationId = uri.getLastPathSegment();
+                String[] selectionArguments = appendSelectionArgs(selectionArgs, locationId);
+
+                numRowsDeleted = mOpenHelper.getWritableDatabase().delete(
+                        WeatherContract.LocationEntry.TABLE_NAME,
+                        appendSelection(selection,
+                                WeatherContract.LocationEntry._ID + " = ? "),
+                        selectionArguments);
+
+                if (numRowsDeleted != 0) {
+                    changes.allWeatherChanged = true;
+                    changes.addLocationUri(uri);
+                }
+                break;
+            }
 
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
 
-        if (numRowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+        endChanges(changes);
+        return numRowsDeleted;
+    }
+
+    /**
+     * Reads a long from ContentValues without going through the boxed Long of getAsLong.
+     *
+     * @param values ContentValues to read from.
+     * @param key    Name of the value.
+     * @return       The value as a primitive long.
+     */
+    private static long getLongValue(ContentValues values, String key) {
+        Object value = values.get(key);
+
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        } else if (value instanceof String) {
+            return Long.parseLong((String) value);
         }
 
-        return numRowsDeleted;
+        throw new IllegalArgumentException("Value is missing or not a number: " + key);
+    }
+
+    /**
+     * Combines the selection of the caller with a selection required by the URI.
+     *
+     * @param selection Selection given by the caller, may be null.
+     * @param required  Selection that must always apply.
+     * @return          Combined selection.
+     */
+    private static String appendSelection(String selection, String required) {
+        if (selection == null || selection.isEmpty()) {
+            return required;
+        }
+
+        return "(" + selection + ") AND " + required;
+    }
+
+    /**
+     * Appends an argument to the end of the selection arguments.
+     *
+     * @param selectionArgs Arguments given by the caller, may be null.
+     * @param arg           Argument to append.
+     * @return              New array of arguments.
+     */
+    private static String[] appendSelectionArgs(String[] selectionArgs, String arg) {
+        if (selectionArgs == null) {
+            return new String[] {arg};
+        }
+
+        String[] newArgs = new String[selectionArgs.length + 1];
+        System.arraycopy(selectionArgs, 0, newArgs, 0, selectionArgs.length);
+        newArgs[selectionArgs.length] = arg;
+        return newArgs;
     }
 
     /**
@@ -218,22 +448,326 @@ public class WeatherProvider extends ContentProvider {
     }
 
     /**
-     * Not used.
+     * Saves a location or the weather of a single day. Weather of several days is written faster
+     * with bulkInsert, single days are meant for {@link #applyBatch}. A day that is already stored
+     * for the location is updated in place.
      *
      * @param uri    The URI of the insertion request. This must not be null.
      * @param values A set of column_name/value pairs to add to the database.
      *               This must not be null
-     * @return       Normally the URI for the newly inserted item.
+     * @return       The URI of the location. If the location was already saved, the URI of the
+     *               existing row. For weather the date URI of the day, null if it wasn't written.
      */
     @Override
     public Uri insert(@NonNull Uri uri, ContentValues values) {
-        throw new RuntimeException(
-                "We are not implementing insert in Sunshine. Use bulkInsert instead");
+        switch (sUriMatcher.match(uri)) {
+            case CODE_WEATHER: {
+                PendingChanges changes = beginChanges();
+                int rowsWritten = upsertWeather(new ContentValues[] {values}, changes);
+                endChanges(changes);
+
+                if (rowsWritten == 0) {
+                    return null;
+                }
+                return WeatherContract.WeatherEntry.buildWeatherUriWithDate(
+                        getLongValue(values, WeatherContract.WeatherEntry.COLUMN_DATE));
+            }
+
+            case CODE_LOCATION: {
+                final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+                String locationSetting = values.getAsString(
+                        WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING);
+
+                long _id = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, values);
+                if (_id != -1) {
+                    PendingChanges changes = beginChanges();
+                    changes.addLocationUri(uri);
+                    endChanges(changes);
+                } else {
+                    // Already saved, the insert was ignored by the UNIQUE constraint.
+                    _id = DatabaseUtils.longForQuery(db,
+                            "SELECT " + WeatherContract.LocationEntry._ID +
+                                    " FROM " + WeatherContract.LocationEntry.TABLE_NAME +
+                                    " WHERE " +
+                                    WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                            new String[] {locationSetting});
+                }
+
+                return WeatherContract.LocationEntry.buildLocationUri(_id);
+            }
+
+            default:
+                throw new UnsupportedOperationException("Unknown uri: " + uri);
+        }
     }
 
+    /**
+     * Updates a saved location, used to store the coordinates returned by the weather server, or
+     * stored weather. Updated weather keeps its row id, the superseded values are archived.
+     *
+     * @param uri           The URI of the location or the weather to update.
+     * @param values        New values of the rows.
+     * @param selection     An optional restriction to apply to rows when updating.
+     * @param selectionArgs Used in conjunction with the selection statement
+     * @return              The number of rows updated
+     */
     @Override
     public int update(@NonNull Uri uri, ContentValues values, String selection, String[] selectionArgs) {
-        throw new RuntimeException("We are not implementing update in Sunshine");
+        int numRowsUpdated;
+        PendingChanges changes = beginChanges();
+
+        switch (sUriMatcher.match(uri)) {
+            case CODE_WEATHER:
+                numRowsUpdated = updateWeather(values, selection, selectionArgs);
+                if (numRowsUpdated != 0) {
+                    changes.allWeatherChanged = true;
+                }
+                break;
+
+            case CODE_WEATHER_WITH_DATE: {
+                String UTCdate = uri.getLastPathSegment();
+                numRowsUpdated = updateWeather(values,
+                        appendSelection(selection,
+                                WeatherContract.WeatherEntry.COLUMN_DATE + " = ? "),
+                        appendSelectionArgs(selectionArgs, UTCdate));
+                if (numRowsUpdated != 0) {
+                    changes.addDates(new long[] {Long.parseLong(UTCdate)}, 1);
+                }
+                break;
+            }
+
+            case CODE_LOCATION_WITH_ID: {
+                String locationId = uri.getLastPathSegment();
+                String[] selectionArguments = appendSelectionArgs(selectionArgs, locationId);
+
+                numRowsUpdated = mOpenHelper.getWritableDatabase().update(
+                        WeatherContract.LocationEntry.TABLE_NAME,
+                        values,
+                        appendSelection(selection,
+                                WeatherContract.LocationEntry._ID + " = ? "),
+                        selectionArguments);
+
+                if (numRowsUpdated != 0) {
+                    changes.addLocationUri(uri);
+                }
+                break;
+            }
+
+            default:
+                throw new UnsupportedOperationException("Unknown uri: " + uri);
+        }
+
+        endChanges(changes);
+        return numRowsUpdated;
+    }
+
+    /**
+     * Updates weather in place, after copying the values it replaces into the archive.
+     *
+     * @return The number of rows updated.
+     */
+    private int updateWeather(ContentValues values, String selection, String[] selectionArgs) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        db.beginTransaction();
+        WeatherArchive archive = new WeatherArchive(db, System.currentTimeMillis());
+        try {
+            archive.archiveWhere(selection, selectionArgs);
+            int numRowsUpdated = db.update(
+                    WeatherContract.WeatherEntry.TABLE_NAME,
+                    values,
+                    selection,
+                    selectionArgs);
+            db.setTransactionSuccessful();
+            return numRowsUpdated;
+        } finally {
+            archive.close();
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Applies a batch of operations in one transaction. Changes are published to the caches and
+     * observers once they committed, not after every operation.
+     * <p/>
+     * Long batches, e.g. a backfill, mark the operations that start a new group with
+     * {@link ContentProviderOperation.Builder#withYieldAllowed}. At the first of them after every
+     * {@link #BATCH_YIELD_INTERVAL} operations, the transaction is committed if another thread
+     * waits for the database, so readers without write-ahead logging and other writers get in
+     * between. Groups are always applied atomically, a batch without yield points as a whole.
+     *
+     * @param operations Operations to apply.
+     * @return           Results of the operations.
+     * @throws OperationApplicationException If an operation failed, everything since the last
+     *                                       yield is rolled back.
+     */
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(
+            @NonNull ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        ContentProviderResult[] results = new ContentProviderResult[operations.size()];
+        PendingChanges changes = new PendingChanges();
+        boolean successful = false;
+
+        mBatchChanges.set(changes);
+        db.beginTransaction();
+        try {
+            int operationsSinceYield = 0;
+            for (int i = 0; i < operations.size(); i++) {
+                ContentProviderOperation operation = operations.get(i);
+
+                if (operation.isYieldAllowed() && operationsSinceYield >= BATCH_YIELD_INTERVAL) {
+                    operationsSinceYield = 0;
+                    if (db.yieldIfContendedSafely()) {
+                        // Everything before this operation committed.
+                        publishChanges(changes);
+                        changes = new PendingChanges();
+                        mBatchChanges.set(changes);
+                    }
+                }
+
+                results[i] = operation.apply(this, results, i);
+                operationsSinceYield++;
+            }
+            db.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            db.endTransaction();
+            mBatchChanges.remove();
+        }
+
+        if (successful) {
+            publishChanges(changes);
+        }
+        return results;
+    }
+
+    /**
+     * Returns the changes the current write is recorded in: those of the batch it is part of, or
+     * new ones that are published right after the write.
+     */
+    private PendingChanges beginChanges() {
+        PendingChanges batchChanges = mBatchChanges.get();
+        return batchChanges != null ? batchChanges : new PendingChanges();
+    }
+
+    /**
+     * Publishes the changes of a write, unless they belong to a batch that didn't commit yet.
+     */
+    private void endChanges(PendingChanges changes) {
+        if (changes != mBatchChanges.get()) {
+            publishChanges(changes);
+        }
+    }
+
+    /**
+     * Tells everyone who keeps a copy of the data about committed changes. Cached query results are
+     * dropped first and snapshots must be current before observers of the weather are told to
+     * re-read.
+     */
+    private void publishChanges(PendingChanges changes) {
+        boolean weatherChanged = changes.allWeatherChanged || changes.dateCount != 0;
+
+        if (!changes.locationUris.isEmpty()) {
+            mQueryCache.invalidateAll();
+        } else if (changes.allWeatherChanged) {
+            mQueryCache.invalidateWeather();
+        } else if (weatherChanged) {
+            mQueryCache.invalidateDates(changes.dates, changes.dateCount);
+        }
+
+        if (weatherChanged) {
+            ForecastSnapshotCache.publish(mOpenHelper.getReadableDatabase());
+            SyncState.update(getContext(), mOpenHelper.getReadableDatabase());
+
+            // Coalesced with the other writes of the sync into one notification per date.
+            if (changes.allWeatherChanged) {
+                WeatherChangeNotifier.notifyAllChanged(getContext());
+            } else {
+                WeatherChangeNotifier.notifyDatesChanged(
+                        getContext(), changes.dates, changes.dateCount);
+            }
+        }
+
+        for (Uri locationUri : changes.locationUris) {
+            getContext().getContentResolver().notifyChange(locationUri, null);
+        }
+    }
+
+    /**
+     * Changes written by a transaction that aren't published yet.
+     */
+    private static final class PendingChanges {
+        // Dates of changed days of weather, may contain duplicates.
+        long[] dates = new long[16];
+        int dateCount;
+
+        // Weather of every day may have changed.
+        boolean allWeatherChanged;
+
+        // URIs of written locations, notified as they were written.
+        final Set<Uri> locationUris = new LinkedHashSet<>();
+
+        void addDates(long[] changedDates, int count) {
+            if (dateCount + count > dates.length) {
+                dates = Arrays.copyOf(dates, Math.max(dates.length * 2, dateCount + count));
+            }
+            System.arraycopy(changedDates, 0, dates, dateCount, count);
+            dateCount += count;
+        }
+
+        void addLocationUri(Uri uri) {
+            locationUris.add(uri);
+        }
+    }
+
+    /**
+     * Runs maintenance that isn't a query or a write of rows. Supports
+     * {@link WeatherContract#METHOD_MAINTAIN_ARCHIVE}, which applies the archive retention set in
+     * preferences, and {@link WeatherContract#METHOD_CHECKPOINT}, which checkpoints the
+     * write-ahead log.
+     *
+     * @param method Name of the method.
+     * @param arg    Not used.
+     * @param extras Not used.
+     * @return       Always null.
+     */
+    @Override
+    public Bundle call(@NonNull String method, String arg, Bundle extras) {
+        if (WeatherContract.METHOD_MAINTAIN_ARCHIVE.equals(method)) {
+            WeatherArchive.maintain(mOpenHelper.getWritableDatabase(),
+                    SunshinePreferences.getArchiveRetentionMonths(getContext()),
+                    System.currentTimeMillis());
+            return null;
+        }
+
+        if (WeatherContract.METHOD_CHECKPOINT.equals(method)) {
+            mOpenHelper.checkpoint();
+            return null;
+        }
+
+        return super.call(method, arg, extras);
+    }
+
+    /**
+     * Switches the provider to a database file of its own, so benchmarks don't touch the stored
+     * forecast of the app. The snapshots and the sync state are read again from the new database
+     * and observers re-read their weather. Must not be called while the provider is in use.
+     *
+     * @param name File name of the database, null for the database of the app.
+     */
+    @VisibleForTesting
+    public void useDatabase(@Nullable String name) {
+        mOpenHelper.close();
+        mOpenHelper = name == null
+                ? new WeatherDbHelper(getContext())
+                : new WeatherDbHelper(getContext(), name, true);
+        mQueryCache.invalidateAll();
+
+        ForecastSnapshotCache.publish(mOpenHelper.getReadableDatabase());
+        SyncState.update(getContext(), mOpenHelper.getReadableDatabase());
+        WeatherChangeNotifier.notifyAllChanged(getContext());
     }
 
     /**
@@ -242,6 +776,7 @@ public class WeatherProvider extends ContentProvider {
     @Override
     @TargetApi(11)
     public void shutdown() {
+        mQueryCache.invalidateAll();
         mOpenHelper.close();
         super.shutdown();
     }
@@ -0,0 +1,203 @@
+package com.example.android.sunshine.data;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+
+/**
+ * Writes days of weather in place. A day that isn't stored yet is inserted, a stored day only gets
+ * the columns that changed, so it keeps its row id and index entries of unchanged columns aren't
+ * rewritten. A day that didn't change isn't written at all. The superseded values of a changed day
+ * are copied into the {@link WeatherArchive} first.
+ * <p/>
+ * SQLite only has an upsert clause from version 3.24, which older devices don't ship, so the
+ * stored day is looked up with one compiled statement that also tells which columns differ.
+ * <p/>
+ * An instance writes the rows of one transaction and must be closed before it ends.
+ */
+final class WeatherUpsert {
+
+    /** The day wasn't stored and was inserted. */
+    static final int INSERTED = 1;
+
+    /** The day was stored with other values and was updated. */
+    static final int UPDATED = 2;
+
+    /** The day was stored with the same values, nothing was written. */
+    static final int UNCHANGED = 3;
+
+    // Columns compared and updated, every one has a bit in the mask returned by the lookup.
+    private static final String[] VALUE_COLUMNS = {
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES
+    };
+
+    // Low bits of the lookup result hold the mask of changed columns, the row id is above.
+    private static final int MASK_BITS = 8;
+    private static final long MASK = (1 << MASK_BITS) - 1;
+
+    // Returns -1 if the day isn't stored. Parameters: location, date, then VALUE_COLUMNS.
+    private static final String SQL_LOOKUP = buildLookupSql();
+
+    // Parameters: location, date, then VALUE_COLUMNS.
+    private static final String SQL_INSERT = buildInsertSql();
+
+    private final SQLiteDatabase mDb;
+    private final WeatherArchive mArchive;
+
+    private final SQLiteStatement mLookupStatement;
+    private final SQLiteStatement mInsertStatement;
+
+    // Update statements by mask of changed columns, compiled on first use.
+    private final SQLiteStatement[] mUpdateStatements =
+            new SQLiteStatement[1 << VALUE_COLUMNS.length];
+
+    /**
+     * @param db      Database, inside the write transaction.
+     * @param archive Receives the superseded values of updated days.
+     */
+    WeatherUpsert(SQLiteDatabase db, WeatherArchive archive) {
+        mDb = db;
+        mArchive = archive;
+        mLookupStatement = db.compileStatement(SQL_LOOKUP);
+        mInsertStatement = db.compileStatement(SQL_INSERT);
+    }
+
+    /**
+     * Writes the weather of a day. Values must contain every column, like for an insert.
+     *
+     * @param locationId Row id of the location.
+     * @param date       Normalized UTC date of the day.
+     * @param values     Weather of the day.
+     * @return           {@link #INSERTED}, {@link #UPDATED} or {@link #UNCHANGED}.
+     * @throws android.database.SQLException If the row violates a constraint.
+     */
+    int upsert(long locationId, long date, ContentValues values) {
+        bindKeyAndValues(mLookupStatement, locationId, date, values);
+        long stored = mLookupStatement.simpleQueryForLong();
+
+        if (stored == -1) {
+            bindKeyAndValues(mInsertStatement, locationId, date, values);
+            mInsertStatement.executeInsert();
+            return INSERTED;
+        }
+
+        int changedColumns = (int) (stored & MASK);
+        if (changedColumns == 0) {
+            return UNCHANGED;
+        }
+
+        mArchive.archiveDay(locationId, date);
+
+        SQLiteStatement updateStatement = getUpdateStatement(changedColumns);
+        int index = 1;
+        for (int i = 0; i < VALUE_COLUMNS.length; i++) {
+            if ((changedColumns & (1 << i)) != 0) {
+                bindValue(updateStatement, index++, values.get(VALUE_COLUMNS[i]));
+            }
+        }
+        updateStatement.bindLong(index, stored >>> MASK_BITS);
+        updateStatement.executeUpdateDelete();
+        return UPDATED;
+    }
+
+    /**
+     * Releases the compiled statements.
+     */
+    void close() {
+        mLookupStatement.close();
+        mInsertStatement.close();
+        for (SQLiteStatement statement : mUpdateStatements) {
+            if (statement != null) {
+                statement.close();
+            }
+        }
+    }
+
+    private SQLiteStatement getUpdateStatement(int changedColumns) {
+        SQLiteStatement statement = mUpdateStatements[changedColumns];
+        if (statement == null) {
+            StringBuilder sql = new StringBuilder("UPDATE ")
+                    .append(WeatherEntry.TABLE_NAME).append(" SET ");
+            String separator = "";
+            for (int i = 0; i < VALUE_COLUMNS.length; i++) {
+                if ((changedColumns & (1 << i)) != 0) {
+                    sql.append(separator).append(VALUE_COLUMNS[i]).append(" = ?");
+                    separator = ", ";
+                }
+            }
+            sql.append(" WHERE ").append(WeatherEntry._ID).append(" = ?");
+
+            statement = mDb.compileStatement(sql.toString());
+            mUpdateStatements[changedColumns] = statement;
+        }
+        return statement;
+    }
+
+    private static void bindKeyAndValues(SQLiteStatement statement, long locationId, long date,
+                                         ContentValues values) {
+        statement.bindLong(1, locationId);
+        statement.bindLong(2, date);
+        for (int i = 0; i < VALUE_COLUMNS.length; i++) {
+            bindValue(statement, i + 3, values.get(VALUE_COLUMNS[i]));
+        }
+    }
+
+    /**
+     * Binds a value of ContentValues in its own type, like SQLiteDatabase.insert does.
+     */
+    private static void bindValue(SQLiteStatement statement, int index, Object value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else if (value instanceof Double || value instanceof Float) {
+            statement.bindDouble(index, ((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            statement.bindLong(index, ((Number) value).longValue());
+        } else if (value instanceof Boolean) {
+            statement.bindLong(index, (Boolean) value ? 1 : 0);
+        } else if (value instanceof byte[]) {
+            statement.bindBlob(index, (byte[]) value);
+        } else {
+            statement.bindString(index, value.toString());
+        }
+    }
+
+    /**
+     * Builds the lookup of a stored day. "IS NOT" compares numerically like "!=" but treats null
+     * as a value, so a changed column gives 1.
+     */
+    private static String buildLookupSql() {
+        StringBuilder changedMask = new StringBuilder();
+        for (int i = 0; i < VALUE_COLUMNS.length; i++) {
+            changedMask.append(i == 0 ? "" : " | ")
+                    .append("((").append(VALUE_COLUMNS[i]).append(" IS NOT ?").append(i + 3)
+                    .append(") << ").append(i).append(")");
+        }
+
+        return "SELECT COALESCE((SELECT (" + WeatherEntry._ID + " << " + MASK_BITS + ") | " +
+                changedMask + " FROM " + WeatherEntry.TABLE_NAME +
+                " WHERE " + WeatherEntry.COLUMN_LOC_KEY + " = ?1 AND " +
+                WeatherEntry.COLUMN_DATE + " = ?2), -1)";
+    }
+
+    private static String buildInsertSql() {
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(WeatherEntry.TABLE_NAME)
+                .append(" (").append(WeatherEntry.COLUMN_LOC_KEY)
+                .append(", ").append(WeatherEntry.COLUMN_DATE);
+        for (String column : VALUE_COLUMNS) {
+            sql.append(", ").append(column);
+        }
+        sql.append(") VALUES (?, ?");
+        for (int i = 0; i < VALUE_COLUMNS.length; i++) {
+            sql.append(", ?");
+        }
+        return sql.append(")").toString();
+    }
+}
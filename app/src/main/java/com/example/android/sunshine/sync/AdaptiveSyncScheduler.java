@@ -0,0 +1,150 @@
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+
+import com.example.android.sunshine.data.SunshinePreferences;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.firebase.jobdispatcher.Constraint;
+import com.firebase.jobdispatcher.FirebaseJobDispatcher;
+import com.firebase.jobdispatcher.GooglePlayDriver;
+import com.firebase.jobdispatcher.Job;
+import com.firebase.jobdispatcher.Lifetime;
+import com.firebase.jobdispatcher.Trigger;
+
+/**
+ * Schedules the next weather sync based on how often the forecast actually changes.
+ * <p/>
+ * After every sync the scheduler learns whether any stored day changed, kept as a moving average
+ * in {@link SunshinePreferences}. The interval gets longer while syncs keep finding the same data
+ * and shorter when they find changes. Upstream forecasts are recomputed by model runs at fixed
+ * UTC hours, so a sync is moved to just after the next model run if that is sooner.
+ * <p/>
+ * Syncs of many locations are large downloads. They are scheduled for unmetered networks while
+ * charging, with a second job on any network a while later, in case that window never comes.
+ * Every sync replaces both jobs, so only the next sync is ever scheduled.
+ */
+public final class AdaptiveSyncScheduler {
+
+    private static final String SUNSHINE_SYNC_TAG = "sunshine-sync";
+    private static final String SUNSHINE_FALLBACK_SYNC_TAG = "sunshine-sync-fallback";
+
+    // Interval for a change rate of one half, the fixed interval used before.
+    private static final long BASE_INTERVAL_SECONDS = 3 * 60 * 60;
+    private static final long MIN_INTERVAL_SECONDS = 90 * 60;
+    private static final long MAX_INTERVAL_SECONDS = 12 * 60 * 60;
+
+    // Weight of the latest sync in the moving average of the change rate.
+    private static final float CHANGE_RATE_WEIGHT = 0.25f;
+    private static final float DEFAULT_CHANGE_RATE = 0.5f;
+
+    // Hours (UTC) at which new model runs are usually available upstream.
+    private static final int[] MODEL_RUN_HOURS_UTC = {4, 10, 16, 22};
+
+    // Time after a model run the server needs to publish it.
+    private static final long MODEL_RUN_DELAY_SECONDS = 15 * 60;
+
+    // Syncs fetching at least this many locations wait for an unmetered network and charging.
+    private static final int LARGE_SYNC_LOCATIONS = 4;
+
+    private AdaptiveSyncScheduler() {
+    }
+
+    /**
+     * Learns from a finished sync.
+     *
+     * @param context       Used to access preferences.
+     * @param changed       true if the sync inserted or updated any day. Days deleted because
+     *                      they expired don't count.
+     * @param locationCount Number of locations the sync fetched.
+     */
+    static void recordSyncResult(Context context, boolean changed, int locationCount) {
+        float changeRate = SunshinePreferences.getSyncChangeRate(context, DEFAULT_CHANGE_RATE);
+        changeRate += CHANGE_RATE_WEIGHT * ((changed ? 1f : 0f) - changeRate);
+        SunshinePreferences.saveSyncStatistics(context, changeRate, locationCount);
+    }
+
+    /**
+     * Schedules the next sync, replacing any scheduled one.
+     *
+     * @param context Used to access preferences and the job dispatcher.
+     */
+    static void scheduleNextSync(Context context) {
+        float changeRate = SunshinePreferences.getSyncChangeRate(context, DEFAULT_CHANGE_RATE);
+        boolean isLargeSync =
+                SunshinePreferences.getSyncLocationCount(context) >= LARGE_SYNC_LOCATIONS;
+
+        long delaySeconds = getSyncDelaySeconds(changeRate, System.currentTimeMillis());
+        long flexSeconds = delaySeconds / 3;
+
+        FirebaseJobDispatcher dispatcher = new FirebaseJobDispatcher(new GooglePlayDriver(context));
+
+        if (isLargeSync) {
+            dispatcher.schedule(buildSyncJob(dispatcher, SUNSHINE_SYNC_TAG,
+                    delaySeconds, flexSeconds,
+                    Constraint.ON_UNMETERED_NETWORK, Constraint.DEVICE_CHARGING));
+            dispatcher.schedule(buildSyncJob(dispatcher, SUNSHINE_FALLBACK_SYNC_TAG,
+                    2 * delaySeconds, flexSeconds,
+                    Constraint.ON_ANY_NETWORK));
+        } else {
+            dispatcher.schedule(buildSyncJob(dispatcher, SUNSHINE_SYNC_TAG,
+                    delaySeconds, flexSeconds,
+                    Constraint.ON_ANY_NETWORK));
+            dispatcher.cancel(SUNSHINE_FALLBACK_SYNC_TAG);
+        }
+    }
+
+    /**
+     * Time until the next sync. The interval is inversely proportional to the change rate, a
+     * model run coming up sooner shortens it.
+     *
+     * @param changeRate Moving average of changed syncs between 0 and 1.
+     * @param nowMillis  Current time.
+     * @return           Delay in seconds.
+     */
+    static long getSyncDelaySeconds(float changeRate, long nowMillis) {
+        long intervalSeconds = (long) (BASE_INTERVAL_SECONDS * DEFAULT_CHANGE_RATE
+                / Math.max(changeRate, 0.01f));
+        intervalSeconds = Math.max(MIN_INTERVAL_SECONDS,
+                Math.min(MAX_INTERVAL_SECONDS, intervalSeconds));
+
+        long untilModelRunSeconds = getSecondsUntilNextModelRun(nowMillis)
+                + MODEL_RUN_DELAY_SECONDS;
+        if (untilModelRunSeconds < intervalSeconds) {
+            // Not sooner than the minimum, a model run right now was fetched by this sync.
+            intervalSeconds = Math.max(MIN_INTERVAL_SECONDS / 3, untilModelRunSeconds);
+        }
+
+        return intervalSeconds;
+    }
+
+    private static long getSecondsUntilNextModelRun(long nowMillis) {
+        long millisOfDay = nowMillis % SunshineDateUtils.DAY_IN_MILLIS;
+        long startOfDay = nowMillis - millisOfDay;
+
+        for (int hour : MODEL_RUN_HOURS_UTC) {
+            long modelRun = startOfDay + hour * SunshineDateUtils.HOUR_IN_MILLIS;
+            if (modelRun > nowMillis) {
+                return (modelRun - nowMillis) / SunshineDateUtils.SECOND_IN_MILLIS;
+            }
+        }
+
+        long firstTomorrow = startOfDay + SunshineDateUtils.DAY_IN_MILLIS
+                + MODEL_RUN_HOURS_UTC[0] * SunshineDateUtils.HOUR_IN_MILLIS;
+        return (firstTomorrow - nowMillis) / SunshineDateUtils.SECOND_IN_MILLIS;
+    }
+
+    private static Job buildSyncJob(FirebaseJobDispatcher dispatcher, String tag,
+                                    long delaySeconds, long flexSeconds, int... constraints) {
+        return dispatcher.newJobBuilder()
+                .setService(SunshineFirebaseJobService.class)
+                .setTag(tag)
+                .setConstraints(constraints)
+                .setLifetime(Lifetime.FOREVER)
+                .setRecurring(false)
+                .setTrigger(Trigger.executionWindow(
+                        (int) delaySeconds,
+                        (int) (delaySeconds + flexSeconds)))
+                .setReplaceCurrent(true)
+                .build();
+    }
+}
@@ -1,42 +1,33 @@
 package com.example.android.sunshine.sync;
 
-import android.annotation.SuppressLint;
-import android.content.Context;
-import android.os.AsyncTask;
-
 import com.firebase.jobdispatcher.JobParameters;
 import com.firebase.jobdispatcher.JobService;
 
+/**
+ * Started by FirebaseJobDispatcher for scheduled syncs. The sync runs in the
+ * {@link SyncJobEngine}, joining one that was already started by the app.
+ * <p/>
+ * The job finishes after the first run of the sync. Retries of the engine wait minutes, which
+ * would keep the job open close to the execution limit of JobScheduler. A failed sync is still
+ * retried by the engine and by the next scheduled sync.
+ */
 public class SunshineFirebaseJobService extends JobService {
 
-    private AsyncTask<Void, Void, Void> mFetchWeatherTask;
-
-    @SuppressLint("StaticFieldLeak")
     @Override
     public boolean onStartJob(final JobParameters job) {
-        mFetchWeatherTask = new AsyncTask<Void, Void, Void>() {
-            @SuppressLint("WrongThread")
-            @Override
-            protected Void doInBackground(Void... voids) {
-                Context context = getApplicationContext();
-                SunshineSyncUtils.startImmediateSync(context);
-                return null;
-            }
-
+        SunshineSyncUtils.startSync(this, new SyncJobEngine.Listener() {
             @Override
-            protected void onPostExecute(Void aVoid) {
+            public void onJobRun(String key, boolean success) {
+                // The next sync is scheduled by the sync itself.
                 jobFinished(job, false);
             }
-        }.execute();
-
+        });
         return true;
     }
 
     @Override
     public boolean onStopJob(JobParameters job) {
-        if (mFetchWeatherTask != null) {
-            mFetchWeatherTask.cancel(true);
-        }
+        SyncJobEngine.getInstance(this).cancel(SunshineSyncUtils.SYNC_JOB_KEY);
         return true;
     }
 
@@ -1,21 +0,0 @@
-package com.example.android.sunshine.sync;
-
-import android.app.IntentService;
-import android.content.Intent;
-import android.support.annotation.Nullable;
-
-/**
- * An IntentService subclass for handling asynchronous task requests in a service on a separate
- * handler thread.
- */
-public class SunshineSyncIntentService extends IntentService {
-
-    public SunshineSyncIntentService() {
-        super(SunshineSyncIntentService.class.getSimpleName());
-    }
-
-    @Override
-    protected void onHandleIntent(@Nullable Intent intent) {
-        SunshineSyncTask.syncWeather(this);
-    }
-}
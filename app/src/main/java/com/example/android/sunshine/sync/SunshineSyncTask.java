@@ -1,57 +1,468 @@
 package com.example.android.sunshine.sync;
 
+import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.os.RemoteException;
+import android.support.v4.os.CancellationSignal;
+import android.support.v4.os.OperationCanceledException;
 import android.text.format.DateUtils;
+import android.util.Log;
 
+import com.example.android.sunshine.data.ForecastListSnapshot;
+import com.example.android.sunshine.data.ForecastSnapshot;
+import com.example.android.sunshine.data.ForecastSnapshotCache;
 import com.example.android.sunshine.data.SunshinePreferences;
+import com.example.android.sunshine.data.SyncState;
 import com.example.android.sunshine.data.WeatherContract;
+import com.example.android.sunshine.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.utilities.ForecastResponseCache;
 import com.example.android.sunshine.utilities.NetworkUtils;
 import com.example.android.sunshine.utilities.NotificationUtils;
-import com.example.android.sunshine.utilities.OpenWeatherJsonUtils;
+import com.example.android.sunshine.utilities.SyncMetrics;
 
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class SunshineSyncTask {
 
+    private static final String TAG = SunshineSyncTask.class.getSimpleName();
+
+    // Returned by syncLocation when no forecast was received.
+    private static final int NO_FORECAST = -1;
+
+    // Maximum number of locations fetched at the same time.
+    private static final int MAX_PARALLEL_LOCATION_SYNCS = 4;
+
+    // Columns that are written by the sync and compared to find changed days.
+    private static final String[] WEATHER_SYNC_PROJECTION = {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherContract.WeatherEntry.COLUMN_DEGREES
+    };
+
+    // Indexes of the WEATHER_SYNC_PROJECTION for more convenient access.
+    private static final int INDEX_WEATHER_DATE = 0;
+    private static final int INDEX_WEATHER_CONDITION_ID = 1;
+    private static final int INDEX_WEATHER_MIN_TEMP = 2;
+    private static final int INDEX_WEATHER_MAX_TEMP = 3;
+    private static final int INDEX_WEATHER_HUMIDITY = 4;
+    private static final int INDEX_WEATHER_PRESSURE = 5;
+    private static final int INDEX_WEATHER_WIND_SPEED = 6;
+    private static final int INDEX_WEATHER_DEGREES = 7;
+
+    // Columns of the saved locations.
+    private static final String[] LOCATION_SYNC_PROJECTION = {
+            LocationEntry._ID,
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG
+    };
+
+    // Indexes of the LOCATION_SYNC_PROJECTION for more convenient access.
+    private static final int INDEX_LOCATION_ID = 0;
+    private static final int INDEX_LOCATION_SETTING = 1;
+    private static final int INDEX_LOCATION_COORD_LAT = 2;
+    private static final int INDEX_LOCATION_COORD_LONG = 3;
+
+    // Whether runs that failed and are retried changed weather. Reported to the scheduler with
+    // the run that completes the sync, so a retried sync is one sample. Only used on the engine
+    // thread.
+    private static boolean sPendingWeatherChanged;
+
     /**
-     * Performs a network request for weather, parses json response and inserts new data into
-     * ContentProvider.
+     * Performs network requests for the weather of every saved location, parses json responses
+     * and writes the days that changed into ContentProvider. Locations are fetched concurrently,
+     * each one is written in its own transaction. The location set in preferences is always
+     * saved before syncing. Whether anything changed is reported to the
+     * {@link AdaptiveSyncScheduler}, which then schedules the next sync.
+     * <p/>
+     * Runs as a job of {@link SyncJobEngine}, which never runs two syncs at the same time.
+     * Cancelling the signal aborts the network reads that are in progress. The cost of every
+     * stage is recorded in {@link SyncMetrics}.
      *
-     * @param context Used to access utility methods.
+     * @param context            Used to access utility methods.
+     * @param cancellationSignal Cancels the sync.
+     * @return                   true if every location was synced, false if one failed and the
+     *                           sync should be retried.
+     * @throws OperationCanceledException If the sync was cancelled.
      */
-    synchronized public static void syncWeather(Context context) {
+    static boolean syncWeather(final Context context, CancellationSignal cancellationSignal) {
+        final SyncMetrics.Sample metrics = SyncMetrics.startSync();
         try {
-            URL queryUrl = NetworkUtils.getUrl(context);
-            String jsonResponse = NetworkUtils.getResponseFromHttpUrl(queryUrl);
+            ContentResolver contentResolver = context.getContentResolver();
+
+            final String preferredLocation = SunshinePreferences.getPreferredWeatherLocation(context);
+            ContentValues preferredLocationValues = new ContentValues();
+            preferredLocationValues.put(LocationEntry.COLUMN_LOCATION_SETTING, preferredLocation);
+            contentResolver.insert(LocationEntry.CONTENT_URI, preferredLocationValues);
 
-            ContentValues[] contentValues = OpenWeatherJsonUtils
-                    .getWeatherContentValuesFromJson(context, jsonResponse);
+            List<SavedLocation> locations = getSavedLocations(contentResolver);
+            if (locations.isEmpty()) return true;
 
-            if (contentValues != null && contentValues.length != 0) {
-                ContentResolver contentResolver = context.getContentResolver();
+            // Every location gets its own signal, a CancellationSignal has a single listener.
+            final List<CancellationSignal> locationSignals = new ArrayList<>(locations.size());
+            for (int i = 0; i < locations.size(); i++) {
+                locationSignals.add(new CancellationSignal());
+            }
+            cancellationSignal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+                @Override
+                public void onCancel() {
+                    for (CancellationSignal locationSignal : locationSignals) {
+                        locationSignal.cancel();
+                    }
+                }
+            });
 
-                contentResolver.delete(
-                        WeatherContract.WeatherEntry.CONTENT_URI,
-                        null,
-                        null);
+            ExecutorService executor = Executors.newFixedThreadPool(
+                    Math.min(MAX_PARALLEL_LOCATION_SYNCS, locations.size()));
+            List<Future<Integer>> results = new ArrayList<>(locations.size());
 
-                contentResolver.bulkInsert(
-                        WeatherContract.WeatherEntry.CONTENT_URI,
-                        contentValues);
+            try {
+                for (int i = 0; i < locations.size(); i++) {
+                    final SavedLocation location = locations.get(i);
+                    final CancellationSignal locationSignal = locationSignals.get(i);
+                    results.add(executor.submit(new Callable<Integer>() {
+                        @Override
+                        public Integer call() throws Exception {
+                            boolean isPreferred = location.setting.equals(preferredLocation);
+                            return syncLocation(context, location, isPreferred,
+                                    locationSignal, metrics);
+                        }
+                    }));
+                }
+            } finally {
+                executor.shutdown();
+            }
+
+            boolean preferredLocationSynced = false;
+            boolean anyLocationSynced = false;
+            boolean anyLocationFailed = false;
+            boolean anyWeatherChanged = false;
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    int writtenDays = results.get(i).get();
+                    anyLocationSynced = true;
+                    anyWeatherChanged |= writtenDays > 0;
+                    if (writtenDays != NO_FORECAST
+                            && locations.get(i).setting.equals(preferredLocation)) {
+                        preferredLocationSynced = true;
+                    }
+                } catch (ExecutionException e) {
+                    // One location failing doesn't stop the others.
+                    if (!cancellationSignal.isCanceled()) {
+                        Log.e(TAG, "Sync of " + locations.get(i).setting + " failed",
+                                e.getCause());
+                    }
+                    anyLocationFailed = true;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new OperationCanceledException();
+                }
+            }
+            cancellationSignal.setOnCancelListener(null);
+            cancellationSignal.throwIfCanceled();
+
+            if (anyLocationSynced) {
+                SyncState.setLastSyncTime(context, System.currentTimeMillis());
+                // Superseded days were archived, old partitions are dropped and compacted.
+                SunshineSyncUtils.scheduleArchiveMaintenance(context);
+            }
+
+            // A retry asks the locations that were synced again, they mostly answer unchanged
+            // and would count twice. The sync is reported once, when every location is synced.
+            anyWeatherChanged |= sPendingWeatherChanged;
+            if (anyLocationFailed) {
+                sPendingWeatherChanged = anyWeatherChanged;
+            } else {
+                sPendingWeatherChanged = false;
+                AdaptiveSyncScheduler.recordSyncResult(
+                        context, anyWeatherChanged, locations.size());
+            }
+
+            // Checkpointed here on the sync thread, never while the UI waits for a query.
+            contentResolver.call(WeatherContract.WeatherEntry.CONTENT_URI,
+                    WeatherContract.METHOD_CHECKPOINT, null, null);
+
+            // The top of the list MainActivity draws before its loader returns.
+            ForecastSnapshot preferredForecast = ForecastSnapshotCache.get(preferredLocation);
+            if (preferredForecast != null) {
+                ForecastListSnapshot.write(context, preferredForecast);
+            }
 
+            if (preferredLocationSynced) {
                 boolean notificationsEnabled = SunshinePreferences
                         .areNotificationsEnabled(context);
                 long timeSinceLastNotification = SunshinePreferences
                         .getEllapsedTimeSinceLastNotification(context);
 
                 if (notificationsEnabled && timeSinceLastNotification >= DateUtils.DAY_IN_MILLIS) {
-                    NotificationUtils.notifyUserOfNewWeather(context);
+                    long stageStart = metrics.beginStage(SyncMetrics.STAGE_NOTIFICATION);
+                    try {
+                        NotificationUtils.notifyUserOfNewWeather(context);
+                        metrics.addCounter(SyncMetrics.COUNTER_NOTIFICATIONS, 1);
+                    } finally {
+                        metrics.endStage(SyncMetrics.STAGE_NOTIFICATION, stageStart);
+                    }
                 }
             }
-        } catch (Exception e) {
-            e.printStackTrace();
+
+            return !anyLocationFailed;
+        } finally {
+            AdaptiveSyncScheduler.scheduleNextSync(context);
+            SyncMetrics.finishSync(metrics);
+        }
+    }
+
+    /**
+     * Fetches the weather of one location and writes the days that changed.
+     *
+     * @param context            Used to access utility methods.
+     * @param location           Location to sync.
+     * @param isPreferred        true if this is the location set in preferences.
+     * @param cancellationSignal Aborts the network read, nothing is written once it is cancelled.
+     * @param metrics            Receives the stage times of the location.
+     * @return                   Number of days inserted or updated, NO_FORECAST if the forecast
+     *                           didn't change since the last sync or wasn't available. Deleted
+     *                           days only expired, they don't count as a change of the forecast.
+     * @throws Exception         If the weather can't be fetched or parsed.
+     */
+    private static int syncLocation(Context context, SavedLocation location,
+                                    boolean isPreferred, CancellationSignal cancellationSignal,
+                                    SyncMetrics.Sample metrics) throws Exception {
+        long stageStart = metrics.beginStage(SyncMetrics.STAGE_URL_BUILD);
+        URL queryUrl;
+        try {
+            queryUrl = location.hasCoordinates
+                    ? NetworkUtils.buildUrlWithLatitudeLongitude(
+                            location.latitude, location.longitude)
+                    : NetworkUtils.buildUrlWithLocationQuery(location.setting);
+        } finally {
+            metrics.endStage(SyncMetrics.STAGE_URL_BUILD, stageStart);
+        }
+
+        ContentResolver contentResolver = context.getContentResolver();
+        ForecastResponseCache responseCache = ForecastResponseCache.getInstance(context);
+
+        Map<Long, ContentValues> storedWeather = getStoredWeather(contentResolver, location.id);
+
+        // A 304 is only safe if there is a stored forecast it refers to.
+        if (storedWeather.isEmpty()) {
+            responseCache.remove(queryUrl);
         }
+
+        ContentValues locationValues = new ContentValues();
+        ContentValues[] contentValues = NetworkUtils
+                .getWeatherContentValuesFromHttpUrl(
+                        context, queryUrl, locationValues, cancellationSignal, metrics);
+
+        if (contentValues == null || contentValues.length == 0) {
+            return NO_FORECAST;
+        }
+        cancellationSignal.throwIfCanceled();
+
+        stageStart = metrics.beginStage(SyncMetrics.STAGE_WRITE);
+        try {
+            return writeLocationWeather(context, location, isPreferred, locationValues,
+                    contentValues, storedWeather, metrics);
+        } catch (RuntimeException | RemoteException | OperationApplicationException e) {
+            // The next request must not be answered with 304 for a forecast that wasn't written.
+            responseCache.remove(queryUrl);
+            throw e;
+        } finally {
+            metrics.endStage(SyncMetrics.STAGE_WRITE, stageStart);
+        }
+    }
+
+    /**
+     * Writes a fetched forecast of one location. Only the days that differ from the stored ones
+     * are inserted, stored days that are no longer part of the forecast are deleted. Everything
+     * is applied as one batch, so the location is never seen with half of its forecast written.
+     *
+     * @param context        Used to access the ContentProvider.
+     * @param location       Location the forecast belongs to.
+     * @param isPreferred    true if this is the location set in preferences.
+     * @param locationValues Coordinates received with the forecast.
+     * @param contentValues  Fetched forecast.
+     * @param storedWeather  Weather currently stored for the location, keyed by date.
+     * @param metrics        Receives the number of days written or deleted.
+     * @return               Number of days inserted or updated.
+     * @throws RemoteException               If the provider can't be reached.
+     * @throws OperationApplicationException If a write failed, nothing was written.
+     */
+    private static int writeLocationWeather(Context context, SavedLocation location,
+                                            boolean isPreferred, ContentValues locationValues,
+                                            ContentValues[] contentValues,
+                                            Map<Long, ContentValues> storedWeather,
+                                            SyncMetrics.Sample metrics)
+            throws RemoteException, OperationApplicationException {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+
+        Double latitude = locationValues.getAsDouble(LocationEntry.COLUMN_COORD_LAT);
+        Double longitude = locationValues.getAsDouble(LocationEntry.COLUMN_COORD_LONG);
+        if (latitude != null && longitude != null) {
+            if (!location.hasCoordinates
+                    || latitude != location.latitude || longitude != location.longitude) {
+                operations.add(ContentProviderOperation
+                        .newUpdate(LocationEntry.buildLocationUri(location.id))
+                        .withValues(locationValues)
+                        .build());
+            }
+            if (isPreferred) {
+                SunshinePreferences.setLocationDetails(context, latitude, longitude);
+            }
+        }
+
+        int changedDays = 0;
+        for (ContentValues weatherValues : contentValues) {
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, location.id);
+
+            long date = weatherValues.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+            ContentValues storedValues = storedWeather.remove(date);
+            if (storedValues == null || !storedValues.equals(weatherValues)) {
+                operations.add(ContentProviderOperation
+                        .newInsert(WeatherContract.WeatherEntry.CONTENT_URI)
+                        .withValues(weatherValues)
+                        .build());
+                changedDays++;
+            }
+        }
+
+        // Whatever is left in storage is no longer part of the forecast.
+        String locationSelection = WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ?";
+        String[] locationArgs = {Long.toString(location.id)};
+        for (long expiredDate : storedWeather.keySet()) {
+            operations.add(ContentProviderOperation
+                    .newDelete(WeatherContract.WeatherEntry.buildWeatherUriWithDate(expiredDate))
+                    .withSelection(locationSelection, locationArgs)
+                    .build());
+        }
+
+        if (!operations.isEmpty()) {
+            context.getContentResolver().applyBatch(WeatherContract.CONTENT_AUTHORITY, operations);
+        }
+
+        metrics.addCounter(SyncMetrics.COUNTER_ROWS_WRITTEN, changedDays + storedWeather.size());
+        return changedDays;
+    }
+
+    /**
+     * Reads the saved locations.
+     *
+     * @param contentResolver Used to query the ContentProvider.
+     * @return                Saved locations.
+     */
+    private static List<SavedLocation> getSavedLocations(ContentResolver contentResolver) {
+        List<SavedLocation> locations = new ArrayList<>();
+
+        Cursor cursor = contentResolver.query(
+                LocationEntry.CONTENT_URI,
+                LOCATION_SYNC_PROJECTION,
+                null,
+                null,
+                null);
+
+        if (cursor == null) {
+            return locations;
+        }
+
+        try {
+            while (cursor.moveToNext()) {
+                SavedLocation location = new SavedLocation();
+                location.id = cursor.getLong(INDEX_LOCATION_ID);
+                location.setting = cursor.getString(INDEX_LOCATION_SETTING);
+                location.hasCoordinates = !cursor.isNull(INDEX_LOCATION_COORD_LAT)
+                        && !cursor.isNull(INDEX_LOCATION_COORD_LONG);
+                location.latitude = cursor.getDouble(INDEX_LOCATION_COORD_LAT);
+                location.longitude = cursor.getDouble(INDEX_LOCATION_COORD_LONG);
+                locations.add(location);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return locations;
+    }
+
+    /**
+     * Reads the weather of a location currently stored in the ContentProvider. Values are read
+     * back in the same types the parser produces, so unchanged days compare equal to the new
+     * forecast.
+     *
+     * @param contentResolver Used to query the ContentProvider.
+     * @param locationId      Row id of the location.
+     * @return                Stored weather keyed by date.
+     */
+    private static Map<Long, ContentValues> getStoredWeather(ContentResolver contentResolver,
+                                                             long locationId) {
+        Map<Long, ContentValues> storedWeather = new HashMap<>();
+
+        Cursor cursor = contentResolver.query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                WEATHER_SYNC_PROJECTION,
+                WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ?",
+                new String[] {Long.toString(locationId)},
+                null);
+
+        if (cursor == null) {
+            return storedWeather;
+        }
+
+        try {
+            while (cursor.moveToNext()) {
+                long date = cursor.getLong(INDEX_WEATHER_DATE);
+
+                ContentValues values = new ContentValues();
+                values.put(WeatherContract.WeatherEntry.COLUMN_DATE, date);
+                values.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+                        cursor.getInt(INDEX_WEATHER_CONDITION_ID));
+                values.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+                        cursor.getDouble(INDEX_WEATHER_MIN_TEMP));
+                values.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+                        cursor.getDouble(INDEX_WEATHER_MAX_TEMP));
+                values.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+                        cursor.getInt(INDEX_WEATHER_HUMIDITY));
+                values.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+                        cursor.getDouble(INDEX_WEATHER_PRESSURE));
+                values.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+                        cursor.getDouble(INDEX_WEATHER_WIND_SPEED));
+                values.put(WeatherContract.WeatherEntry.COLUMN_DEGREES,
+                        cursor.getDouble(INDEX_WEATHER_DEGREES));
+                values.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
+
+                storedWeather.put(date, values);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return storedWeather;
+    }
+
+    /**
+     * A row of the location table.
+     */
+    private static class SavedLocation {
+        long id;
+        String setting;
+        boolean hasCoordinates;
+        double latitude;
+        double longitude;
     }
 }
@@ -1,51 +1,51 @@
 package com.example.android.sunshine.sync;
 
 import android.content.Context;
-import android.content.Intent;
-import android.database.Cursor;
-import android.os.AsyncTask;
+import android.support.v4.os.CancellationSignal;
+import android.text.format.DateUtils;
 
+import com.example.android.sunshine.data.SunshinePreferences;
+import com.example.android.sunshine.data.SyncState;
 import com.example.android.sunshine.data.WeatherContract;
-import com.firebase.jobdispatcher.Constraint;
-import com.firebase.jobdispatcher.Driver;
-import com.firebase.jobdispatcher.FirebaseJobDispatcher;
-import com.firebase.jobdispatcher.GooglePlayDriver;
-import com.firebase.jobdispatcher.Job;
-import com.firebase.jobdispatcher.Lifetime;
-import com.firebase.jobdispatcher.Trigger;
 
 public class SunshineSyncUtils {
 
-    // Interval at which to sync with the weather.
-    private static final int SYNC_INTERVAL_SECONDS = 3 * 60 * 60; // 3 hours.
-    private static final int SYNC_FLEXTIME_SECONDS = SYNC_INTERVAL_SECONDS / 3;
+    // Key of the sync in the SyncJobEngine, every trigger shares it.
+    static final String SYNC_JOB_KEY = "sync-weather";
+
+    private static final SyncJobEngine.Job SYNC_JOB = new SyncJobEngine.Job() {
+        @Override
+        public boolean run(Context context, CancellationSignal cancellationSignal) {
+            return SunshineSyncTask.syncWeather(context, cancellationSignal);
+        }
+    };
+
+    // Key of the maintenance of the forecast archive in the SyncJobEngine.
+    static final String ARCHIVE_JOB_KEY = "maintain-archive";
+
+    // The archive is maintained at most once per interval after a sync.
+    private static final long ARCHIVE_MAINTENANCE_INTERVAL_MILLIS = DateUtils.DAY_IN_MILLIS;
+
+    private static final SyncJobEngine.Job ARCHIVE_JOB = new SyncJobEngine.Job() {
+        @Override
+        public boolean run(Context context, CancellationSignal cancellationSignal) {
+            context.getContentResolver().call(WeatherContract.WeatherEntry.CONTENT_URI,
+                    WeatherContract.METHOD_MAINTAIN_ARCHIVE, null, null);
+            SunshinePreferences.saveLastArchiveMaintenanceTime(
+                    context, System.currentTimeMillis());
+            return true;
+        }
+    };
 
     private static boolean sInitialized = false;
 
-    private static final String SUNSHINE_SYNC_TAG = "sunshine-sync";
-
     /**
-     * Schedules a periodic weather sync.
+     * Schedules the next weather sync, see {@link AdaptiveSyncScheduler}.
      *
      * @param context Used for utility classes.
      */
     static void scheduleFirebaseJobDispatcherSync(Context context) {
-        Driver driver = new GooglePlayDriver(context);
-        FirebaseJobDispatcher dispatcher = new FirebaseJobDispatcher(driver);
-
-        Job job = dispatcher.newJobBuilder()
-                .setService(SunshineFirebaseJobService.class)
-                .setTag(SUNSHINE_SYNC_TAG)
-                .setConstraints(Constraint.ON_ANY_NETWORK)
-                .setLifetime(Lifetime.FOREVER)
-                .setRecurring(true)
-                .setTrigger(Trigger.executionWindow(
-                        SYNC_INTERVAL_SECONDS,
-                        SYNC_INTERVAL_SECONDS + SYNC_FLEXTIME_SECONDS))
-                .setReplaceCurrent(true)
-                .build();
-
-        dispatcher.schedule(job);
+        AdaptiveSyncScheduler.scheduleNextSync(context);
     }
 
     /**
@@ -53,7 +53,7 @@ public class SunshineSyncUtils {
      *
      * @param context Used for utility classes.
      */
-    synchronized public static void initialize(final Context context) {
+    synchronized public static void initialize(Context context) {
         // Initialisation performed once per app.
         if (sInitialized) return;
 
@@ -61,40 +61,66 @@ public class SunshineSyncUtils {
 
         scheduleFirebaseJobDispatcherSync(context);
 
-        new AsyncTask<Void, Void, Void>() {
-
-            @Override
-            protected Void doInBackground(Void... voids) {
-                String[] projection = {WeatherContract.WeatherEntry._ID};
-                String selection = WeatherContract.WeatherEntry.getSqlSelectForTodayOnwards();
-                Cursor cursor = context.getContentResolver().query(
-                        WeatherContract.WeatherEntry.CONTENT_URI,
-                        projection,
-                        selection,
-                        null,
-                        null
-                );
+        // Answered by the sync state record, the weather table isn't touched on startup.
+        String preferredLocation = SunshinePreferences.getPreferredWeatherLocation(context);
+        if (SyncState.needsSync(context, preferredLocation)) {
+            startImmediateSync(context);
+        }
+    }
 
-                // Sync if content provider is empty.
-                if (cursor == null || cursor.getCount() == 0) {
-                    startImmediateSync(context);
-                }
+    /**
+     * Hepler method to perform immediate sync. Joins a sync that is already waiting or running.
+     *
+     * @param context Used to access the job engine.
+     */
+    public static void startImmediateSync(Context context) {
+        startSync(context, null);
+    }
 
-                cursor.close();
-                return null;
-            }
+    /**
+     * Cancels a running sync and starts a new one, used when the synced data changes, e.g. the
+     * location.
+     *
+     * @param context Used to access the job engine.
+     */
+    public static void restartSync(Context context) {
+        SyncJobEngine.getInstance(context).enqueue(SYNC_JOB_KEY, SYNC_JOB,
+                SyncJobEngine.ExistingJobPolicy.REPLACE, null);
+    }
 
-        }.execute();
+    /**
+     * Starts a sync or joins the one that is already waiting or running.
+     *
+     * @param context  Used to access the job engine.
+     * @param listener Told when the next run of the sync ended, may be null.
+     */
+    static void startSync(Context context, SyncJobEngine.Listener listener) {
+        SyncJobEngine.getInstance(context).enqueue(SYNC_JOB_KEY, SYNC_JOB,
+                SyncJobEngine.ExistingJobPolicy.KEEP, listener);
+    }
 
+    /**
+     * Drops and compacts old partitions of the forecast archive in the background, e.g. after the
+     * retention was changed. Joins a maintenance that is already waiting or running.
+     *
+     * @param context Used to access the job engine.
+     */
+    public static void startArchiveMaintenance(Context context) {
+        SyncJobEngine.getInstance(context).enqueue(ARCHIVE_JOB_KEY, ARCHIVE_JOB,
+                SyncJobEngine.ExistingJobPolicy.KEEP, null);
     }
 
     /**
-     * Hepler method to perform immediate sync.
+     * Starts the maintenance of the forecast archive if it didn't run within the last day. Called
+     * after syncs, it runs on the engine thread once the sync finished.
      *
-     * @param context Used to create intent and start service.
+     * @param context Used to access the job engine.
      */
-    public static void startImmediateSync(Context context) {
-        Intent intent = new Intent(context, SunshineSyncIntentService.class);
-        context.startService(intent);
+    static void scheduleArchiveMaintenance(Context context) {
+        long sinceLastMaintenance = System.currentTimeMillis()
+                - SunshinePreferences.getLastArchiveMaintenanceTime(context);
+        if (sinceLastMaintenance >= ARCHIVE_MAINTENANCE_INTERVAL_MILLIS) {
+            startArchiveMaintenance(context);
+        }
     }
 }
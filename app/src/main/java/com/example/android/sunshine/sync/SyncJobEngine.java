@@ -0,0 +1,240 @@
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.support.v4.os.CancellationSignal;
+import android.support.v4.os.OperationCanceledException;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs background jobs of the app on a single thread, one job per key at a time.
+ * <p/>
+ * A job enqueued while another one with the same key is waiting or running either joins it or
+ * replaces it, see {@link ExistingJobPolicy}, so concurrent triggers never run the same work back
+ * to back. Replaced jobs are cancelled through their {@link CancellationSignal}, which jobs pass
+ * down to their network reads. Failed jobs are retried with exponential backoff, after 30 s, 1, 2
+ * and 4 minutes, up to {@link #MAX_ATTEMPTS} runs.
+ */
+public final class SyncJobEngine {
+
+    private static final String TAG = SyncJobEngine.class.getSimpleName();
+
+    // Delay before the first retry, doubled for every further one.
+    private static final long INITIAL_BACKOFF_MILLIS = 30 * 1000;
+
+    // Runs of a job including retries.
+    private static final int MAX_ATTEMPTS = 5;
+
+    /**
+     * What to do with a job of the same key that is already waiting or running.
+     */
+    public enum ExistingJobPolicy {
+        // The new request joins the existing job.
+        KEEP,
+        // The existing job is cancelled and the new one runs after it stopped.
+        REPLACE
+    }
+
+    /**
+     * Work done by a job, called on the engine thread.
+     */
+    public interface Job {
+        /**
+         * @param context            Application context.
+         * @param cancellationSignal Cancelled when the job is replaced or stopped.
+         * @return                   true if the work is done, false to retry it later.
+         * @throws Exception         The job failed and is retried later.
+         */
+        boolean run(Context context, CancellationSignal cancellationSignal) throws Exception;
+    }
+
+    /**
+     * Receives the result of the next run of a job, called on the engine thread. A listener is
+     * told once, a failed run is still retried by the engine without it.
+     */
+    public interface Listener {
+        /**
+         * @param key     Key of the job.
+         * @param success true if the job finished, false if the run failed or was cancelled.
+         */
+        void onJobRun(String key, boolean success);
+    }
+
+    private static SyncJobEngine sInstance;
+
+    private final Context mContext;
+    private final ScheduledExecutorService mExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    // Waiting or running job of every key, guarded by this.
+    private final Map<String, JobRecord> mJobs = new HashMap<>();
+
+    private SyncJobEngine(Context context) {
+        mContext = context;
+    }
+
+    /**
+     * Returns the engine of the app, creating it on first use.
+     *
+     * @param context Used to get the application context.
+     * @return        The engine.
+     */
+    public static synchronized SyncJobEngine getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new SyncJobEngine(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Enqueues a job.
+     *
+     * @param key      Jobs with the same key are never run at the same time.
+     * @param job      Work to do.
+     * @param policy   What to do if a job of the key is already waiting or running.
+     * @param listener Told when the next run of the job ended, may be null.
+     */
+    public synchronized void enqueue(String key, Job job, ExistingJobPolicy policy,
+                                     Listener listener) {
+        JobRecord existing = mJobs.get(key);
+
+        if (existing != null && policy == ExistingJobPolicy.KEEP) {
+            if (listener != null) {
+                existing.listeners.add(listener);
+            }
+            // A new trigger doesn't wait for the backoff of a failed run. A retry that already
+            // started can't be cancelled, it runs anyway and mustn't run twice.
+            if (!existing.running && existing.attempt > 0 && existing.future.cancel(false)) {
+                submit(existing, 0);
+            }
+            return;
+        }
+
+        JobRecord record = new JobRecord(key, job);
+        if (existing != null) {
+            // Whoever waited for the replaced job waits for the new one.
+            existing.cancel();
+            record.listeners.addAll(existing.listeners);
+        }
+        if (listener != null) {
+            record.listeners.add(listener);
+        }
+
+        mJobs.put(key, record);
+        submit(record, 0);
+    }
+
+    /**
+     * Cancels the job of a key, if one is waiting or running. Its listeners are told it didn't
+     * finish.
+     *
+     * @param key Key of the job.
+     */
+    public void cancel(String key) {
+        List<Listener> listeners;
+        synchronized (this) {
+            JobRecord record = mJobs.remove(key);
+            if (record == null) return;
+            record.cancel();
+            listeners = record.listeners;
+        }
+        notifyListeners(key, listeners, false);
+    }
+
+    private void submit(final JobRecord record, long delayMillis) {
+        record.future = mExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                execute(record);
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void execute(JobRecord record) {
+        synchronized (this) {
+            if (record.cancellationSignal.isCanceled()) return;
+            record.running = true;
+        }
+
+        boolean success;
+        try {
+            success = record.job.run(mContext, record.cancellationSignal);
+        } catch (OperationCanceledException e) {
+            success = false;
+        } catch (Exception e) {
+            Log.e(TAG, "Job " + record.key + " failed, attempt " + (record.attempt + 1), e);
+            success = false;
+        }
+
+        List<Listener> listeners;
+        synchronized (this) {
+            // Cancelled jobs were removed and their listeners told or moved.
+            record.running = false;
+            if (record.cancellationSignal.isCanceled()) return;
+
+            // Listeners are told about this run, only listeners added later wait for a retry.
+            listeners = new ArrayList<>(record.listeners);
+            record.listeners.clear();
+
+            if (!success && record.attempt + 1 < MAX_ATTEMPTS) {
+                record.attempt++;
+                long backoffMillis = INITIAL_BACKOFF_MILLIS << (record.attempt - 1);
+                Log.w(TAG, "Retrying job " + record.key + " in " + backoffMillis + " ms");
+                submit(record, backoffMillis);
+            } else {
+                // A newer job of the key may have replaced this one already.
+                if (mJobs.get(record.key) == record) {
+                    mJobs.remove(record.key);
+                }
+                if (!success) {
+                    Log.e(TAG, "Giving up job " + record.key + " after " + MAX_ATTEMPTS
+                            + " attempts");
+                }
+            }
+        }
+
+        notifyListeners(record.key, listeners, success);
+    }
+
+    private static void notifyListeners(String key, List<Listener> listeners, boolean success) {
+        for (Listener listener : listeners) {
+            listener.onJobRun(key, success);
+        }
+    }
+
+    /**
+     * A job that is waiting or running.
+     */
+    private static class JobRecord {
+        final String key;
+        final Job job;
+        final CancellationSignal cancellationSignal = new CancellationSignal();
+        final List<Listener> listeners = new ArrayList<>();
+
+        // Runs that failed so far.
+        int attempt;
+        boolean running;
+
+        // Pending run, cancelled if it didn't start yet.
+        Future<?> future;
+
+        JobRecord(String key, Job job) {
+            this.key = key;
+            this.job = job;
+        }
+
+        void cancel() {
+            cancellationSignal.cancel();
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+}
@@ -1,8 +1,10 @@
 package com.example.android.sunshine.utilities;
 
+import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 
+import com.example.android.sunshine.data.SunshinePreferences;
 import com.example.android.sunshine.data.WeatherContract;
 
 import java.util.ArrayList;
@@ -43,10 +45,18 @@ public class FakeDataUtils {
     public static void insertFakeData(Context context) {
         //Get today's normalized date
         long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+        //Fake data belongs to the location set in preferences
+        ContentValues locationValues = new ContentValues();
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+                SunshinePreferences.getPreferredWeatherLocation(context));
+        long locationId = ContentUris.parseId(context.getContentResolver()
+                .insert(WeatherContract.LocationEntry.CONTENT_URI, locationValues));
         List<ContentValues> fakeValues = new ArrayList<ContentValues>();
         //loop over 7 days starting today onwards
         for(int i=0; i<7; i++) {
-            fakeValues.add(FakeDataUtils.createTestWeatherContentValues(today + TimeUnit.DAYS.toMillis(i)));
+            ContentValues values = FakeDataUtils.createTestWeatherContentValues(today + TimeUnit.DAYS.toMillis(i));
+            values.put(WeatherEntry.COLUMN_LOC_KEY, locationId);
+            fakeValues.add(values);
         }
         // Bulk Insert our new weather data into Sunshine's Database
         context.getContentResolver().bulkInsert(
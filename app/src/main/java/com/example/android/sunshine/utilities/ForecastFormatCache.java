@@ -0,0 +1,122 @@
+package com.example.android.sunshine.utilities;
+
+import android.content.Context;
+import android.support.v4.util.LongSparseArray;
+import android.util.SparseArray;
+
+import com.example.android.sunshine.R;
+import com.example.android.sunshine.data.SunshinePreferences;
+
+import java.util.Locale;
+
+/**
+ * Keeps the Strings shown in the forecast list, so binding a row that was shown before formats
+ * nothing and reads no preferences. Dates are cached per day, temperatures per displayed degree.
+ * <p/>
+ * Cached Strings depend on the unit system, the locale and the current day. The unit system is
+ * read once and must be reset with {@link #invalidate()} when the preference changes or the time
+ * zone changes, the locale and the day are checked on every call and clear the cache when they
+ * change.
+ * <p/>
+ * Not thread safe, only used from the main thread.
+ */
+public final class ForecastFormatCache {
+
+    // More entries than a multi-week list can show, the cache is cleared when it is reached.
+    private static final int MAX_DATE_ENTRIES = 128;
+
+    private static final LongSparseArray<String> sShortDates = new LongSparseArray<>();
+    private static final LongSparseArray<String> sFullDates = new LongSparseArray<>();
+    private static final SparseArray<String> sTemperatures = new SparseArray<>();
+
+    // Unit system the temperatures are formatted in, null until read from preferences.
+    private static Boolean sIsMetric;
+
+    private static Locale sLocale;
+
+    // Local day the Strings were formatted on, "Today" and "Tomorrow" move with it.
+    private static long sDayNumber = Long.MIN_VALUE;
+
+    private ForecastFormatCache() {
+    }
+
+    /**
+     * Same as {@link SunshineDateUtils#getFriendlyDateString(Context, long, boolean)}, formatted
+     * once per day.
+     *
+     * @param context      Context to use for resource localization
+     * @param dateInMillis The date in milliseconds (UTC)
+     * @param showFullDate Used to show a fuller-version of the date.
+     * @return             A user-friendly representation of the date.
+     */
+    public static String getFriendlyDateString(Context context, long dateInMillis,
+                                               boolean showFullDate) {
+        checkValidity();
+
+        LongSparseArray<String> dates = showFullDate ? sFullDates : sShortDates;
+        String dateString = dates.get(dateInMillis);
+        if (dateString == null) {
+            if (dates.size() >= MAX_DATE_ENTRIES) {
+                dates.clear();
+            }
+            dateString = SunshineDateUtils
+                    .getFriendlyDateString(context, dateInMillis, showFullDate);
+            dates.put(dateInMillis, dateString);
+        }
+        return dateString;
+    }
+
+    /**
+     * Same as {@link SunshineWeatherUtils#formatTemperature(Context, double)}, formatted once per
+     * displayed degree.
+     *
+     * @param context     Android Context to access preferences and resources
+     * @param temperature Temperature in degrees Celsius (°C)
+     * @return            Formatted temperature String in the following form: "21°"
+     */
+    public static String formatTemperature(Context context, double temperature) {
+        checkValidity();
+
+        if (sIsMetric == null) {
+            sIsMetric = SunshinePreferences.isMetric(context);
+        }
+        if (!sIsMetric) {
+            temperature = SunshineWeatherUtils.celsiusToFahrenheit(temperature);
+        }
+
+        // Rounded half away from zero, the same way the format rounds it.
+        int degrees = (int) (Math.signum(temperature) * Math.round(Math.abs(temperature)));
+
+        String temperatureString = sTemperatures.get(degrees);
+        if (temperatureString == null) {
+            temperatureString = String.format(
+                    context.getString(R.string.format_temperature), (double) degrees);
+            sTemperatures.put(degrees, temperatureString);
+        }
+        return temperatureString;
+    }
+
+    /**
+     * Clears everything, called when the unit system or the time zone changes.
+     */
+    public static void invalidate() {
+        sShortDates.clear();
+        sFullDates.clear();
+        sTemperatures.clear();
+        sIsMetric = null;
+    }
+
+    /**
+     * Clears the cache if the locale changed or a new day started.
+     */
+    private static void checkValidity() {
+        Locale locale = Locale.getDefault();
+        long dayNumber = ZoneOffsetResolver.getCurrentDayNumber();
+
+        if (locale != sLocale || dayNumber != sDayNumber) {
+            invalidate();
+            sLocale = locale;
+            sDayNumber = dayNumber;
+        }
+    }
+}
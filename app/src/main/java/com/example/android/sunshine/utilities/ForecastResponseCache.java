@@ -0,0 +1,201 @@
+package com.example.android.sunshine.utilities;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Small on-disk cache of the validators (ETag and Last-Modified) of forecast responses, keyed by
+ * the request URL. They are sent back as If-None-Match and If-Modified-Since, so the server can
+ * answer with 304 Not Modified instead of the full forecast when nothing changed.
+ * <p/>
+ * Only validators are kept, a 304 means the forecast already in the database is current. The
+ * cache holds at most {@link #MAX_ENTRIES} URLs, the least recently used ones are evicted first.
+ */
+public final class ForecastResponseCache {
+
+    private static final String TAG = ForecastResponseCache.class.getSimpleName();
+
+    private static final String CACHE_DIRECTORY = "forecast_responses";
+
+    // Maximum number of URLs to keep validators for.
+    private static final int MAX_ENTRIES = 64;
+
+    private static ForecastResponseCache sInstance;
+
+    private final File mDirectory;
+
+    private ForecastResponseCache(File directory) {
+        mDirectory = directory;
+    }
+
+    /**
+     * Returns the cache of the app, creating it on first use.
+     *
+     * @param context Used to find the cache directory.
+     * @return        The cache.
+     */
+    public static synchronized ForecastResponseCache getInstance(Context context) {
+        if (sInstance == null) {
+            File directory = new File(context.getApplicationContext().getCacheDir(),
+                    CACHE_DIRECTORY);
+            sInstance = new ForecastResponseCache(directory);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Adds the stored validators of the URL to the request, if there are any. Must be called
+     * before the connection is connected.
+     *
+     * @param url        The URL of the request.
+     * @param connection The request.
+     */
+    public synchronized void addConditionalHeaders(URL url, HttpURLConnection connection) {
+        File entry = getEntryFile(url);
+        if (!entry.exists()) return;
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(entry)));
+            String storedUrl = in.readUTF();
+            String eTag = in.readUTF();
+            String lastModified = in.readUTF();
+
+            if (!storedUrl.equals(url.toString())) return;
+
+            if (!eTag.isEmpty()) {
+                connection.setRequestProperty("If-None-Match", eTag);
+            }
+            if (!lastModified.isEmpty()) {
+                connection.setRequestProperty("If-Modified-Since", lastModified);
+            }
+
+            // Mark as recently used for eviction.
+            entry.setLastModified(System.currentTimeMillis());
+        } catch (IOException e) {
+            Log.w(TAG, "Can't read cache entry for " + url, e);
+            entry.delete();
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Stores the validators of a successful response. Responses without validators remove the
+     * entry of the URL.
+     *
+     * @param url        The URL of the request.
+     * @param connection The response.
+     */
+    public synchronized void put(URL url, HttpURLConnection connection) {
+        String eTag = connection.getHeaderField("ETag");
+        String lastModified = connection.getHeaderField("Last-Modified");
+
+        if (eTag == null && lastModified == null) {
+            remove(url);
+            return;
+        }
+
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            Log.w(TAG, "Can't create cache directory " + mDirectory);
+            return;
+        }
+
+        File entry = getEntryFile(url);
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(entry)));
+            out.writeUTF(url.toString());
+            out.writeUTF(eTag != null ? eTag : "");
+            out.writeUTF(lastModified != null ? lastModified : "");
+        } catch (IOException e) {
+            Log.w(TAG, "Can't write cache entry for " + url, e);
+            closeQuietly(out);
+            out = null;
+            entry.delete();
+        } finally {
+            closeQuietly(out);
+        }
+
+        trimToSize();
+    }
+
+    /**
+     * Forgets the validators of the URL, so the next request fetches the full response.
+     *
+     * @param url The URL of the request.
+     */
+    public synchronized void remove(URL url) {
+        File entry = getEntryFile(url);
+        if (entry.exists()) {
+            entry.delete();
+        }
+    }
+
+    /**
+     * Deletes the least recently used entries until the cache holds at most MAX_ENTRIES.
+     */
+    private void trimToSize() {
+        File[] entries = mDirectory.listFiles();
+        if (entries == null || entries.length <= MAX_ENTRIES) return;
+
+        Arrays.sort(entries, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long aModified = a.lastModified();
+                long bModified = b.lastModified();
+                return aModified < bModified ? -1 : (aModified == bModified ? 0 : 1);
+            }
+        });
+
+        for (int i = 0; i < entries.length - MAX_ENTRIES; i++) {
+            entries[i].delete();
+        }
+    }
+
+    private File getEntryFile(URL url) {
+        return new File(mDirectory, hashKey(url.toString()));
+    }
+
+    /**
+     * URLs can't be used as file names, their MD5 is used instead.
+     */
+    private static String hashKey(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16))
+                        .append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            return Integer.toHexString(key.hashCode());
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+            // Nothing to do.
+        }
+    }
+}
@@ -15,19 +15,31 @@
  */
 package com.example.android.sunshine.utilities;
 
+import android.content.ContentValues;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.net.Uri;
 import android.preference.PreferenceManager;
+import android.support.v4.os.CancellationSignal;
+import android.support.v4.os.OperationCanceledException;
+import android.util.Log;
 
 import com.example.android.sunshine.data.SunshinePreferences;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.Scanner;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 /**
  * These utilities will be used to communicate with the weather servers.
@@ -65,6 +77,18 @@ public final class NetworkUtils {
     private final static String UNITS_PARAM = "units";
     private final static String DAYS_PARAM = "cnt";
 
+    /*
+     * Setting Accept-Encoding ourselves turns off the transparent gzip of HttpURLConnection, so
+     * the body has to be decoded in openResponseReader.
+     */
+    private static final String ACCEPT_ENCODING = "gzip, deflate";
+
+    /* Charset of responses that don't declare one, JSON defaults to UTF-8 */
+    private static final String DEFAULT_CHARSET = "UTF-8";
+
+    /* Size of the buffers between the socket, the decompressor and the parser */
+    private static final int STREAM_BUFFER_SIZE = 8192;
+
     public static URL getUrl(Context context) {
         if (SunshinePreferences.isLocationLatLonAvailable(context)) {
             double[] preferredCoordinates = SunshinePreferences.getLocationCoordinates(context);
@@ -96,7 +120,7 @@ public final class NetworkUtils {
         try {
             url = new URL(baseUri.toString());
         } catch (MalformedURLException e) {
-            e.printStackTrace();
+            Log.e(TAG, "Can't build weather URL from " + baseUri, e);
         }
 
         return url;
@@ -123,35 +147,208 @@ public final class NetworkUtils {
         try {
             url = new URL(baseUri.toString());
         } catch (MalformedURLException e) {
-            e.printStackTrace();
+            Log.e(TAG, "Can't build weather URL from " + baseUri, e);
         }
 
         return url;
     }
 
     /**
-     * This method returns the entire result from the HTTP response.
+     * Fetches the forecast from the URL and parses it while it is being downloaded. The body is
+     * never collected into a String, it goes straight from the connection into
+     * {@link OpenWeatherJsonUtils}, compressed bodies are decompressed on the way.
+     * <p/>
+     * The request is conditional if validators of an earlier response are stored in
+     * {@link ForecastResponseCache}. When the server answers 304 Not Modified nothing is parsed
+     * and null is returned, the forecast stored for the URL is still current.
+     * <p/>
+     * Cancelling the signal disconnects the connection, which aborts a blocked read.
      *
-     * @param url The URL to fetch the HTTP response from.
-     * @return The contents of the HTTP response.
-     * @throws IOException Related to network and stream reading
+     * @param context            Used to access the response cache.
+     * @param url                The URL to fetch the forecast from.
+     * @param locationValues     Receives the coordinates of the city, may be null.
+     * @param cancellationSignal Cancels the request, may be null.
+     * @param metrics            Receives connect, first byte and parse times and body bytes.
+     * @return                   Parsed forecast, null if it didn't change since the last fetch or
+     *                           the server reported an error.
+     * @throws IOException Related to network and stream reading or malformed JSON
+     * @throws OperationCanceledException If the request was cancelled.
      */
-    public static String getResponseFromHttpUrl(URL url) throws IOException {
-        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+    public static ContentValues[] getWeatherContentValuesFromHttpUrl(
+            Context context, URL url, ContentValues locationValues,
+            CancellationSignal cancellationSignal, SyncMetrics.Sample metrics)
+            throws IOException {
+        ForecastResponseCache responseCache = ForecastResponseCache.getInstance(context);
+
+        WeatherHttpClient httpClient = WeatherHttpClient.getInstance();
+        final HttpURLConnection urlConnection = httpClient.open(url);
+        urlConnection.setRequestProperty("Accept-Encoding", ACCEPT_ENCODING);
+        responseCache.addConditionalHeaders(url, urlConnection);
+
+        if (cancellationSignal != null) {
+            // Called right away if the signal is already cancelled.
+            cancellationSignal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+                @Override
+                public void onCancel() {
+                    urlConnection.disconnect();
+                }
+            });
+        }
+
+        Reader reader = null;
+        CountingInputStream body = null;
         try {
-            InputStream in = urlConnection.getInputStream();
+            // DNS, TCP and TLS, close to nothing when a kept-alive connection is reused.
+            long stageStart = metrics.beginStage(SyncMetrics.STAGE_CONNECT);
+            try {
+                urlConnection.connect();
+            } finally {
+                metrics.endStage(SyncMetrics.STAGE_CONNECT, stageStart);
+            }
 
-            Scanner scanner = new Scanner(in);
-            scanner.useDelimiter("\\A");
+            // Request sent until the response headers arrived.
+            stageStart = metrics.beginStage(SyncMetrics.STAGE_FIRST_BYTE);
+            int responseCode;
+            try {
+                responseCode = urlConnection.getResponseCode();
+            } finally {
+                metrics.endStage(SyncMetrics.STAGE_FIRST_BYTE, stageStart);
+            }
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                return null;
+            }
 
-            boolean hasInput = scanner.hasNext();
-            if (hasInput) {
-                return scanner.next();
+            // The body is downloaded while it is parsed, both are one stage.
+            stageStart = metrics.beginStage(SyncMetrics.STAGE_PARSE);
+            ContentValues[] weatherValues;
+            try {
+                body = new CountingInputStream(urlConnection.getInputStream());
+                reader = openResponseReader(urlConnection, body);
+                weatherValues = OpenWeatherJsonUtils
+                        .getWeatherContentValuesFromReader(reader, locationValues);
+            } finally {
+                metrics.endStage(SyncMetrics.STAGE_PARSE, stageStart);
+            }
+
+            // Validators are only kept for responses that were parsed successfully.
+            if (weatherValues != null) {
+                responseCache.put(url, urlConnection);
             } else {
-                return null;
+                responseCache.remove(url);
             }
+            return weatherValues;
+        } catch (IOException e) {
+            // A read aborted by the signal is reported as cancelled, not as a network error.
+            if (cancellationSignal != null) {
+                cancellationSignal.throwIfCanceled();
+            }
+            throw e;
         } finally {
-            urlConnection.disconnect();
+            if (body != null) {
+                metrics.addCounter(SyncMetrics.COUNTER_BODY_BYTES, body.getCount());
+            }
+            if (cancellationSignal != null) {
+                cancellationSignal.setOnCancelListener(null);
+            }
+
+            if (cancellationSignal != null && cancellationSignal.isCanceled()) {
+                urlConnection.disconnect();
+            } else {
+                // Keeps the connection alive for the next location instead of disconnecting.
+                httpClient.release(urlConnection, reader);
+            }
+        }
+    }
+
+    /**
+     * Opens the body of a response as text. The body is decompressed as it is read according to
+     * Content-Encoding and decoded with the charset of Content-Type, nothing is buffered beyond
+     * the stream buffers.
+     *
+     * @param urlConnection Connection to read the response from.
+     * @param body          Body of the response as received.
+     * @return              Reader of the response body.
+     * @throws IOException Related to network and stream reading
+     */
+    private static Reader openResponseReader(HttpURLConnection urlConnection, InputStream body)
+            throws IOException {
+        InputStream in = new BufferedInputStream(body, STREAM_BUFFER_SIZE);
+
+        String contentEncoding = urlConnection.getContentEncoding();
+        if ("gzip".equalsIgnoreCase(contentEncoding)) {
+            in = new GZIPInputStream(in, STREAM_BUFFER_SIZE);
+        } else if ("deflate".equalsIgnoreCase(contentEncoding)) {
+            in = new InflaterInputStream(in, new Inflater(), STREAM_BUFFER_SIZE);
+        }
+
+        String charset = getCharset(urlConnection.getContentType());
+        try {
+            return new BufferedReader(new InputStreamReader(in, charset), STREAM_BUFFER_SIZE);
+        } catch (UnsupportedEncodingException e) {
+            return new BufferedReader(new InputStreamReader(in, DEFAULT_CHARSET),
+                    STREAM_BUFFER_SIZE);
+        }
+    }
+
+    /**
+     * Finds the charset parameter of a Content-Type header, like "application/json; charset=utf-8".
+     *
+     * @param contentType Value of the Content-Type header, may be null.
+     * @return            The declared charset or UTF-8 if there is none.
+     */
+    private static String getCharset(String contentType) {
+        if (contentType == null) return DEFAULT_CHARSET;
+
+        for (String parameter : contentType.split(";")) {
+            parameter = parameter.trim();
+            if (parameter.regionMatches(true, 0, "charset=", 0, "charset=".length())) {
+                String charset = parameter.substring("charset=".length()).trim();
+                if (charset.length() > 1 && charset.startsWith("\"") && charset.endsWith("\"")) {
+                    charset = charset.substring(1, charset.length() - 1);
+                }
+                if (!charset.isEmpty()) return charset;
+            }
+        }
+        return DEFAULT_CHARSET;
+    }
+
+    /**
+     * Counts the bytes read from the connection, before they are decompressed.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private long mCount;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                mCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                mCount += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long byteCount) throws IOException {
+            long skipped = super.skip(byteCount);
+            mCount += skipped;
+            return skipped;
+        }
+
+        long getCount() {
+            return mCount;
         }
     }
-}
\ No newline at end of file
+}
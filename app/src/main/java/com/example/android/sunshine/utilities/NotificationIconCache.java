@@ -0,0 +1,90 @@
+package com.example.android.sunshine.utilities;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.support.v4.util.LruCache;
+
+/**
+ * Large icons of notifications, decoded at the size of a notification large icon instead of the
+ * full size of the art and kept in a small LRU cache. Keyed by art resource and screen density,
+ * so a configuration change never returns an icon decoded for another density.
+ */
+public final class NotificationIconCache {
+
+    // Room for a few dozen icons at xxhdpi.
+    private static final int MAX_CACHE_BYTES = 1024 * 1024;
+
+    private static final LruCache<Long, Bitmap> sIcons =
+            new LruCache<Long, Bitmap>(MAX_CACHE_BYTES) {
+                @Override
+                protected int sizeOf(Long key, Bitmap bitmap) {
+                    return bitmap.getRowBytes() * bitmap.getHeight();
+                }
+            };
+
+    private NotificationIconCache() {
+    }
+
+    /**
+     * Returns the art as a notification large icon, decoding it on the first call.
+     *
+     * @param resources  Used to decode the art and find the icon size.
+     * @param resourceId Drawable resource of the art.
+     * @return           The icon, null if the resource can't be decoded.
+     */
+    public static Bitmap getLargeIcon(Resources resources, int resourceId) {
+        int density = resources.getDisplayMetrics().densityDpi;
+        Long key = ((long) resourceId << 32) | density;
+
+        Bitmap icon = sIcons.get(key);
+        if (icon == null) {
+            icon = decodeLargeIcon(resources, resourceId);
+            if (icon != null) {
+                sIcons.put(key, icon);
+            }
+        }
+        return icon;
+    }
+
+    /**
+     * Decodes the art subsampled to the smallest power of two that still covers the icon size.
+     */
+    private static Bitmap decodeLargeIcon(Resources resources, int resourceId) {
+        int width = resources.getDimensionPixelSize(
+                android.R.dimen.notification_large_icon_width);
+        int height = resources.getDimensionPixelSize(
+                android.R.dimen.notification_large_icon_height);
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(resources, resourceId, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) return null;
+
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= width
+                && options.outHeight / (sampleSize * 2) >= height) {
+            sampleSize *= 2;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        Bitmap bitmap = BitmapFactory.decodeResource(resources, resourceId, options);
+        if (bitmap == null) return null;
+
+        // Subsampling stops at powers of two, the rest is scaled once here.
+        if (bitmap.getWidth() > width || bitmap.getHeight() > height) {
+            float scale = Math.min(
+                    (float) width / bitmap.getWidth(), (float) height / bitmap.getHeight());
+            Bitmap scaled = Bitmap.createScaledBitmap(bitmap,
+                    Math.round(bitmap.getWidth() * scale),
+                    Math.round(bitmap.getHeight() * scale),
+                    true);
+            if (scaled != bitmap) {
+                bitmap.recycle();
+            }
+            bitmap = scaled;
+        }
+        return bitmap;
+    }
+}
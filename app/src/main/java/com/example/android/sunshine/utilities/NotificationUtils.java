@@ -1,21 +1,23 @@
 package com.example.android.sunshine.utilities;
 
 
+import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
-import android.content.res.Resources;
 import android.database.Cursor;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
+import android.os.Build;
 import android.support.v4.app.NotificationCompat;
 import android.support.v4.app.TaskStackBuilder;
 import android.support.v4.content.ContextCompat;
 
 import com.example.android.sunshine.DetailActivity;
 import com.example.android.sunshine.R;
+import com.example.android.sunshine.data.ForecastSnapshot;
+import com.example.android.sunshine.data.ForecastSnapshotCache;
 import com.example.android.sunshine.data.SunshinePreferences;
 import com.example.android.sunshine.data.WeatherContract;
 
@@ -42,8 +44,14 @@ public class NotificationUtils {
 
     private static final int WEATHER_NOTIFICATION_ID = 3004;
 
+    private static final String WEATHER_CHANNEL_ID = "weather_updates";
+
+    // Parts shared by every weather notification, built once. Guarded by NotificationUtils.class.
+    private static NotificationCompat.Builder sTemplate;
+
     /**
-     * Constructs and displays a notification for the newly updated weather for today.
+     * Constructs and displays a notification for the newly updated weather for today. Called by
+     * the sync on a background thread.
      *
      * @param context Context used to query our ContentProvider and use various Utility methods
      */
@@ -53,71 +61,111 @@ public class NotificationUtils {
         Uri todaysWeatherUri = WeatherContract.WeatherEntry
                 .buildWeatherUriWithDate(SunshineDateUtils.normalizeDate(System.currentTimeMillis()));
 
-        /*
-         * The MAIN_FORECAST_PROJECTION array passed in as the second parameter is defined in our WeatherContract
-         * class and is used to limit the columns returned in our cursor.
-         */
-        Cursor todayWeatherCursor = context.getContentResolver().query(
-                todaysWeatherUri,
-                WEATHER_NOTIFICATION_PROJECTION,
-                null,
-                null,
-                null);
+        String locationSetting = SunshinePreferences.getPreferredWeatherLocation(context);
+
+        int weatherId;
+        double high;
+        double low;
+
+        // The sync has just published the new forecast, so today is normally read from memory.
+        ForecastSnapshot.Day today = ForecastSnapshotCache.getToday(locationSetting);
+        if (today != null) {
+            weatherId = today.weatherId;
+            high = today.maxTemp;
+            low = today.minTemp;
+        } else {
+            /*
+             * The WEATHER_NOTIFICATION_PROJECTION array passed in as the second parameter is
+             * used to limit the columns returned in our cursor.
+             */
+            Cursor todayWeatherCursor = context.getContentResolver().query(
+                    todaysWeatherUri,
+                    WEATHER_NOTIFICATION_PROJECTION,
+                    WeatherContract.WeatherEntry.getSqlSelectForLocation(locationSetting),
+                    null,
+                    null);
+
+            if (todayWeatherCursor == null) return;
+
+            try {
+                // If todayWeatherCursor is empty there is nothing to notify about.
+                if (!todayWeatherCursor.moveToFirst()) return;
+
+                // Weather ID as returned by API, used to identify the icon to be used.
+                weatherId = todayWeatherCursor.getInt(INDEX_WEATHER_ID);
+                high = todayWeatherCursor.getDouble(INDEX_MAX_TEMP);
+                low = todayWeatherCursor.getDouble(INDEX_MIN_TEMP);
+            } finally {
+                todayWeatherCursor.close();
+            }
+        }
 
-        /*
-         * If todayWeatherCursor is empty, moveToFirst will return false. If our cursor is not
-         * empty, we want to show the notification.
-         */
-        if (todayWeatherCursor.moveToFirst()) {
+        int largeArtResourceId = SunshineWeatherUtils
+                .getLargeArtResourceIdForWeatherCondition(weatherId);
 
-            // Weather ID as returned by API, used to identify the icon to be used.
-            int weatherId = todayWeatherCursor.getInt(INDEX_WEATHER_ID);
-            double high = todayWeatherCursor.getDouble(INDEX_MAX_TEMP);
-            double low = todayWeatherCursor.getDouble(INDEX_MIN_TEMP);
+        // Decoded at large icon size once per art and density.
+        Bitmap largeIcon = NotificationIconCache.getLargeIcon(
+                context.getResources(),
+                largeArtResourceId);
 
-            Resources resources = context.getResources();
-            int largeArtResourceId = SunshineWeatherUtils
-                    .getLargeArtResourceIdForWeatherCondition(weatherId);
+        String notificationText = getNotificationText(context, weatherId, high, low);
 
-            Bitmap largeIcon = BitmapFactory.decodeResource(
-                    resources,
-                    largeArtResourceId);
+        // getSmallArtResourceIdForWeatherCondition returns the proper art to show given an ID.
+        int smallArtResourceId = SunshineWeatherUtils
+                .getSmallArtResourceIdForWeatherCondition(weatherId);
 
-            String notificationTitle = context.getString(R.string.app_name);
+        Intent intent = new Intent(context, DetailActivity.class);
+        intent.setData(todaysWeatherUri);
 
-            String notificationText = getNotificationText(context, weatherId, high, low);
+        TaskStackBuilder taskStackBuilder = TaskStackBuilder.create(context);
+        taskStackBuilder.addNextIntentWithParentStack(intent);
+        PendingIntent pendingIntent = taskStackBuilder
+                .getPendingIntent(0, PendingIntent.FLAG_UPDATE_CURRENT);
 
-            // getSmallArtResourceIdForWeatherCondition returns the proper art to show given an ID.
-            int smallArtResourceId = SunshineWeatherUtils
-                    .getSmallArtResourceIdForWeatherCondition(weatherId);
+        NotificationManager notificationManager =
+                (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
 
-            NotificationCompat.Builder builder = new NotificationCompat.Builder(context)
-                    .setColor(ContextCompat.getColor(context, R.color.colorPrimary))
+        // Only what differs between notifications is set on the template.
+        synchronized (NotificationUtils.class) {
+            NotificationCompat.Builder builder = getTemplate(context, notificationManager)
                     .setSmallIcon(smallArtResourceId)
                     .setLargeIcon(largeIcon)
-                    .setContentTitle(notificationTitle)
                     .setContentText(notificationText)
-                    .setAutoCancel(true);
-
-            Intent intent = new Intent(context, DetailActivity.class);
-            intent.setData(todaysWeatherUri);
-
-            TaskStackBuilder taskStackBuilder = TaskStackBuilder.create(context);
-            taskStackBuilder.addNextIntentWithParentStack(intent);
-            PendingIntent pendingIntent = taskStackBuilder
-                    .getPendingIntent(0, PendingIntent.FLAG_UPDATE_CURRENT);
-
-            builder.setContentIntent(pendingIntent);
-
-            NotificationManager notificationManager =
-                    (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+                    .setContentIntent(pendingIntent);
 
             notificationManager.notify(WEATHER_NOTIFICATION_ID, builder.build());
-
-            SunshinePreferences.saveLastNotificationTime(context, System.currentTimeMillis());
         }
 
-        todayWeatherCursor.close();
+        SunshinePreferences.saveLastNotificationTime(context, System.currentTimeMillis());
+    }
+
+    /**
+     * Returns the builder holding the parts every weather notification shares, creating it and
+     * the notification channel on first use.
+     *
+     * @param context             Used to access resources.
+     * @param notificationManager Used to create the channel.
+     * @return                    The template, must be used while holding NotificationUtils.class.
+     */
+    private static NotificationCompat.Builder getTemplate(Context context,
+                                                          NotificationManager notificationManager) {
+        if (sTemplate == null) {
+            Context appContext = context.getApplicationContext();
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                NotificationChannel channel = new NotificationChannel(
+                        WEATHER_CHANNEL_ID,
+                        appContext.getString(R.string.notification_channel_weather),
+                        NotificationManager.IMPORTANCE_DEFAULT);
+                notificationManager.createNotificationChannel(channel);
+            }
+
+            sTemplate = new NotificationCompat.Builder(appContext, WEATHER_CHANNEL_ID)
+                    .setColor(ContextCompat.getColor(appContext, R.color.colorPrimary))
+                    .setContentTitle(appContext.getString(R.string.app_name))
+                    .setAutoCancel(true);
+        }
+        return sTemplate;
     }
 
     /**
@@ -17,6 +17,7 @@ package com.example.android.sunshine.utilities;
 
 import android.content.ContentValues;
 import android.content.Context;
+import android.util.JsonReader;
 
 import com.example.android.sunshine.data.SunshinePreferences;
 import com.example.android.sunshine.data.WeatherContract;
@@ -25,7 +26,11 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Utility functions to handle OpenWeatherMap JSON data.
@@ -182,6 +187,189 @@ public final class OpenWeatherJsonUtils {
         return weatherContentValues;
     }
 
+    /**
+     * Streaming counterpart of {@link #getWeatherContentValuesFromJson(Context, String)}. Reads
+     * the forecast token by token straight from the response and fills ContentValues as it goes,
+     * so neither the raw payload nor a JSONObject tree is ever held in memory.
+     * <p/>
+     * The "city", "cod" and "list" members may come in any order, days are dated by their
+     * position in the "list" array just like in the tree based parser.
+     * <p/>
+     * Since several locations may be synced, the coordinates of the city are not written to
+     * preferences here but returned in locationValues.
+     *
+     * @param forecastReader Reader over the JSON response from server. Not closed by this method.
+     * @param locationValues Receives the coordinates of the city as LocationEntry columns, if
+     *                       the response has them. May be null.
+     *
+     * @return Array of ContentValues parsed from the JSON, null if the server reported an error.
+     *
+     * @throws IOException If the JSON can't be read or is malformed.
+     */
+    public static ContentValues[] getWeatherContentValuesFromReader(Reader forecastReader,
+                                                                    ContentValues locationValues)
+            throws IOException {
+
+        JsonReader reader = new JsonReader(forecastReader);
+
+        int errorCode = HttpURLConnection.HTTP_OK;
+        boolean hasCoordinates = false;
+        double[] cityCoordinates = new double[2];
+        List<ContentValues> weatherContentValues = new ArrayList<>();
+
+        long normalizedUtcStartDay = SunshineDateUtils.getNormalizedUtcDateForToday();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+
+            if (OWM_MESSAGE_CODE.equals(name)) {
+                errorCode = reader.nextInt();
+            } else if (OWM_CITY.equals(name)) {
+                hasCoordinates = readCityCoordinates(reader, cityCoordinates);
+            } else if (OWM_LIST.equals(name)) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    /*
+                     * We ignore all the datetime values embedded in the JSON and assume that
+                     * the values are returned in-order by day (which is not guaranteed to be
+                     * correct).
+                     */
+                    long dateTimeMillis = normalizedUtcStartDay
+                            + SunshineDateUtils.DAY_IN_MILLIS * weatherContentValues.size();
+                    weatherContentValues.add(readDayForecast(reader, dateTimeMillis));
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        /* Is there an error? Location invalid or server probably down. */
+        if (errorCode != HttpURLConnection.HTTP_OK) {
+            return null;
+        }
+
+        if (hasCoordinates && locationValues != null) {
+            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, cityCoordinates[0]);
+            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, cityCoordinates[1]);
+        }
+
+        return weatherContentValues.toArray(new ContentValues[weatherContentValues.size()]);
+    }
+
+    /**
+     * Reads the "city" object and extracts its coordinates.
+     *
+     * @param reader      Reader positioned at the "city" object.
+     * @param coordinates Array of two to be filled with the latitude and longitude.
+     * @return            true if both coordinates were found.
+     * @throws IOException If the JSON can't be read.
+     */
+    private static boolean readCityCoordinates(JsonReader reader, double[] coordinates)
+            throws IOException {
+        boolean hasLatitude = false;
+        boolean hasLongitude = false;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (OWM_COORD.equals(reader.nextName())) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if (OWM_LATITUDE.equals(name)) {
+                        coordinates[0] = reader.nextDouble();
+                        hasLatitude = true;
+                    } else if (OWM_LONGITUDE.equals(name)) {
+                        coordinates[1] = reader.nextDouble();
+                        hasLongitude = true;
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return hasLatitude && hasLongitude;
+    }
+
+    /**
+     * Reads a single element of the "list" array into ContentValues.
+     *
+     * @param reader         Reader positioned at the day object.
+     * @param dateTimeMillis Normalized UTC date of the day.
+     * @return               ContentValues for the day.
+     * @throws IOException If the JSON can't be read.
+     */
+    private static ContentValues readDayForecast(JsonReader reader, long dateTimeMillis)
+            throws IOException {
+        ContentValues weatherValues = new ContentValues();
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTimeMillis);
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+
+            if (OWM_PRESSURE.equals(name)) {
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+                        reader.nextDouble());
+            } else if (OWM_HUMIDITY.equals(name)) {
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+                        (int) reader.nextDouble());
+            } else if (OWM_WINDSPEED.equals(name)) {
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+                        reader.nextDouble());
+            } else if (OWM_WIND_DIRECTION.equals(name)) {
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES,
+                        reader.nextDouble());
+            } else if (OWM_TEMPERATURE.equals(name)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String temperatureName = reader.nextName();
+                    if (OWM_MAX.equals(temperatureName)) {
+                        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+                                reader.nextDouble());
+                    } else if (OWM_MIN.equals(temperatureName)) {
+                        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+                                reader.nextDouble());
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else if (OWM_WEATHER.equals(name)) {
+                /* Only the first element of the "weather" array carries the weather code. */
+                reader.beginArray();
+                if (reader.hasNext()) {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if (OWM_WEATHER_ID.equals(reader.nextName())) {
+                            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+                                    reader.nextInt());
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                }
+                while (reader.hasNext()) {
+                    reader.skipValue();
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return weatherValues;
+    }
+
     /**
      * This method parses JSON from a web response and returns an array of Strings
      * describing the weather over various days from the forecast.
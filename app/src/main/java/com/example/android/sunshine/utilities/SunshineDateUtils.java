@@ -21,7 +21,6 @@ import android.text.format.DateUtils;
 import com.example.android.sunshine.R;
 
 import java.text.SimpleDateFormat;
-import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -65,18 +64,13 @@ public final class SunshineDateUtils {
          */
         long utcNowMillis = System.currentTimeMillis();
 
-        /*
-         * This TimeZone represents the device's current time zone. It provides us with a means
-         * of acquiring the offset for local time from a UTC time stamp.
-         */
-        TimeZone currentTimeZone = TimeZone.getDefault();
-
         /*
          * The getOffset method returns the number of milliseconds to add to UTC time to get the
          * elapsed time since the epoch for our current time zone. We pass the current UTC time
          * into this method so it can determine changes to account for daylight savings time.
+         * ZoneOffsetResolver answers it for the device's current time zone without allocating.
          */
-        long gmtOffsetMillis = currentTimeZone.getOffset(utcNowMillis);
+        long gmtOffsetMillis = ZoneOffsetResolver.getOffset(utcNowMillis);
 
         /*
          * UTC time is measured in milliseconds from January 1, 1970 at midnight from the GMT
@@ -108,9 +102,7 @@ public final class SunshineDateUtils {
      * @return The number of days in UTC time from the epoch.
      */
     public static long getDayNumber(long date) {
-        TimeZone tz = TimeZone.getDefault();
-        long gmtOffset = tz.getOffset(date);
-        return (date + gmtOffset) / DAY_IN_MILLIS;
+        return ZoneOffsetResolver.getDayNumber(date);
     }
 
     /**
@@ -154,8 +146,7 @@ public final class SunshineDateUtils {
      * @return The local date (the UTC datetime - the TimeZone offset) in milliseconds.
      */
     public static long getLocalDateFromUTC(long utcDate) {
-        TimeZone tz = TimeZone.getDefault();
-        long gmtOffset = tz.getOffset(utcDate);
+        long gmtOffset = ZoneOffsetResolver.getOffset(utcDate);
         return utcDate - gmtOffset;
     }
 
@@ -167,8 +158,7 @@ public final class SunshineDateUtils {
      * @return The UTC date (the local datetime + the TimeZone offset) in milliseconds.
      */
     public static long getUTCDateFromLocal(long localDate) {
-        TimeZone tz = TimeZone.getDefault();
-        long gmtOffset = tz.getOffset(localDate);
+        long gmtOffset = ZoneOffsetResolver.getOffset(localDate);
         return localDate + gmtOffset;
     }
 
@@ -194,7 +184,7 @@ public final class SunshineDateUtils {
 
         long localDate = getLocalDateFromUTC(dateInMillis);
         long dayNumber = getDayNumber(localDate);
-        long currentDayNumber = getDayNumber(System.currentTimeMillis());
+        long currentDayNumber = ZoneOffsetResolver.getCurrentDayNumber();
 
         if (dayNumber == currentDayNumber || showFullDate) {
             /*
@@ -264,7 +254,7 @@ public final class SunshineDateUtils {
          * day name.
          */
         long dayNumber = getDayNumber(dateInMillis);
-        long currentDayNumber = getDayNumber(System.currentTimeMillis());
+        long currentDayNumber = ZoneOffsetResolver.getCurrentDayNumber();
         if (dayNumber == currentDayNumber) {
             return context.getString(R.string.today);
         } else if (dayNumber == currentDayNumber + 1) {
@@ -21,6 +21,8 @@ import android.util.Log;
 import com.example.android.sunshine.R;
 import com.example.android.sunshine.data.SunshinePreferences;
 
+import java.util.Locale;
+
 /**
  * Contains useful utilities for a weather app, such as conversion between Celsius and Fahrenheit,
  * from kph to mph, and from degrees to NSEW.  It also contains the mapping of weather condition
@@ -30,6 +32,25 @@ public final class SunshineWeatherUtils {
 
     private static final String LOG_TAG = SunshineWeatherUtils.class.getSimpleName();
 
+    // Range of the weather condition ids known to the app.
+    private static final int MIN_WEATHER_ID = 200;
+    private static final int MAX_WEATHER_ID = 962;
+
+    // Columns of CONDITION_TABLE.
+    private static final int COLUMN_STRING = 0;
+    private static final int COLUMN_SMALL_ART = 1;
+    private static final int COLUMN_LARGE_ART = 2;
+    private static final int CONDITION_COLUMNS = 3;
+
+    /*
+     * Description string, small icon and large icon of every weather id from MIN_WEATHER_ID to
+     * MAX_WEATHER_ID, stored next to each other. 0 marks an unknown condition.
+     */
+    private static final int[] CONDITION_TABLE = buildConditionTable();
+
+    // Descriptions of the current locale, replaced when the locale changes.
+    private static volatile ConditionStrings sConditionStrings;
+
     /**
      * This method will convert a temperature from Celsius to Fahrenheit.
      *
@@ -37,7 +58,7 @@ public final class SunshineWeatherUtils {
      *
      * @return Temperature in degrees Fahrenheit (°F)
      */
-    private static double celsiusToFahrenheit(double temperatureInCelsius) {
+    static double celsiusToFahrenheit(double temperatureInCelsius) {
         double temperatureInFahrenheit = (temperatureInCelsius * 1.8) + 32;
         return temperatureInFahrenheit;
     }
@@ -133,7 +154,8 @@ public final class SunshineWeatherUtils {
 
     /**
      * Helper method to provide the string according to the weather
-     * condition id returned by the OpenWeatherMap call.
+     * condition id returned by the OpenWeatherMap call. Strings are looked up in
+     * {@link #CONDITION_TABLE} and resolved once per locale.
      *
      * @param context   Android context
      * @param weatherId from OpenWeatherMap API response
@@ -142,172 +164,25 @@ public final class SunshineWeatherUtils {
      * @return String for the weather condition, null if no relation is found.
      */
     public static String getStringForWeatherCondition(Context context, int weatherId) {
-        int stringId;
-        if (weatherId >= 200 && weatherId <= 232) {
-            stringId = R.string.condition_2xx;
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            stringId = R.string.condition_3xx;
-        } else switch (weatherId) {
-            case 500:
-                stringId = R.string.condition_500;
-                break;
-            case 501:
-                stringId = R.string.condition_501;
-                break;
-            case 502:
-                stringId = R.string.condition_502;
-                break;
-            case 503:
-                stringId = R.string.condition_503;
-                break;
-            case 504:
-                stringId = R.string.condition_504;
-                break;
-            case 511:
-                stringId = R.string.condition_511;
-                break;
-            case 520:
-                stringId = R.string.condition_520;
-                break;
-            case 531:
-                stringId = R.string.condition_531;
-                break;
-            case 600:
-                stringId = R.string.condition_600;
-                break;
-            case 601:
-                stringId = R.string.condition_601;
-                break;
-            case 602:
-                stringId = R.string.condition_602;
-                break;
-            case 611:
-                stringId = R.string.condition_611;
-                break;
-            case 612:
-                stringId = R.string.condition_612;
-                break;
-            case 615:
-                stringId = R.string.condition_615;
-                break;
-            case 616:
-                stringId = R.string.condition_616;
-                break;
-            case 620:
-                stringId = R.string.condition_620;
-                break;
-            case 621:
-                stringId = R.string.condition_621;
-                break;
-            case 622:
-                stringId = R.string.condition_622;
-                break;
-            case 701:
-                stringId = R.string.condition_701;
-                break;
-            case 711:
-                stringId = R.string.condition_711;
-                break;
-            case 721:
-                stringId = R.string.condition_721;
-                break;
-            case 731:
-                stringId = R.string.condition_731;
-                break;
-            case 741:
-                stringId = R.string.condition_741;
-                break;
-            case 751:
-                stringId = R.string.condition_751;
-                break;
-            case 761:
-                stringId = R.string.condition_761;
-                break;
-            case 762:
-                stringId = R.string.condition_762;
-                break;
-            case 771:
-                stringId = R.string.condition_771;
-                break;
-            case 781:
-                stringId = R.string.condition_781;
-                break;
-            case 800:
-                stringId = R.string.condition_800;
-                break;
-            case 801:
-                stringId = R.string.condition_801;
-                break;
-            case 802:
-                stringId = R.string.condition_802;
-                break;
-            case 803:
-                stringId = R.string.condition_803;
-                break;
-            case 804:
-                stringId = R.string.condition_804;
-                break;
-            case 900:
-                stringId = R.string.condition_900;
-                break;
-            case 901:
-                stringId = R.string.condition_901;
-                break;
-            case 902:
-                stringId = R.string.condition_902;
-                break;
-            case 903:
-                stringId = R.string.condition_903;
-                break;
-            case 904:
-                stringId = R.string.condition_904;
-                break;
-            case 905:
-                stringId = R.string.condition_905;
-                break;
-            case 906:
-                stringId = R.string.condition_906;
-                break;
-            case 951:
-                stringId = R.string.condition_951;
-                break;
-            case 952:
-                stringId = R.string.condition_952;
-                break;
-            case 953:
-                stringId = R.string.condition_953;
-                break;
-            case 954:
-                stringId = R.string.condition_954;
-                break;
-            case 955:
-                stringId = R.string.condition_955;
-                break;
-            case 956:
-                stringId = R.string.condition_956;
-                break;
-            case 957:
-                stringId = R.string.condition_957;
-                break;
-            case 958:
-                stringId = R.string.condition_958;
-                break;
-            case 959:
-                stringId = R.string.condition_959;
-                break;
-            case 960:
-                stringId = R.string.condition_960;
-                break;
-            case 961:
-                stringId = R.string.condition_961;
-                break;
-            case 962:
-                stringId = R.string.condition_962;
-                break;
-            default:
-                return context.getString(R.string.condition_unknown, weatherId);
+        int stringId = getConditionResource(weatherId, COLUMN_STRING);
+        if (stringId == 0) {
+            return context.getString(R.string.condition_unknown, weatherId);
         }
-        return context.getString(stringId);
+
+        ConditionStrings conditionStrings = sConditionStrings;
+        Locale locale = Locale.getDefault();
+        if (conditionStrings == null || conditionStrings.locale != locale) {
+            conditionStrings = new ConditionStrings(locale);
+            sConditionStrings = conditionStrings;
+        }
+
+        int index = weatherId - MIN_WEATHER_ID;
+        String conditionString = conditionStrings.strings[index];
+        if (conditionString == null) {
+            conditionString = context.getString(stringId);
+            conditionStrings.strings[index] = conditionString;
+        }
+        return conditionString;
     }
 
     /**
@@ -319,39 +194,8 @@ public final class SunshineWeatherUtils {
      * @return resource id for the corresponding icon. -1 if no relation is found.
      */
     public static int getSmallArtResourceIdForWeatherCondition(int weatherId) {
-        /*
-         * Based on weather code data found at:
-         * See http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
-         */
-        if (weatherId >= 200 && weatherId <= 232) {
-            return R.drawable.ic_storm;
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            return R.drawable.ic_light_rain;
-        } else if (weatherId >= 500 && weatherId <= 504) {
-            return R.drawable.ic_rain;
-        } else if (weatherId == 511) {
-            return R.drawable.ic_snow;
-        } else if (weatherId >= 520 && weatherId <= 531) {
-            return R.drawable.ic_rain;
-        } else if (weatherId >= 600 && weatherId <= 622) {
-            return R.drawable.ic_snow;
-        } else if (weatherId >= 701 && weatherId <= 761) {
-            return R.drawable.ic_fog;
-        } else if (weatherId == 761 || weatherId == 771 || weatherId == 781) {
-            return R.drawable.ic_storm;
-        } else if (weatherId == 800) {
-            return R.drawable.ic_clear;
-        } else if (weatherId == 801) {
-            return R.drawable.ic_light_clouds;
-        } else if (weatherId >= 802 && weatherId <= 804) {
-            return R.drawable.ic_cloudy;
-        } else if (weatherId >= 900 && weatherId <= 906) {
-            return R.drawable.ic_storm;
-        } else if (weatherId >= 958 && weatherId <= 962) {
-            return R.drawable.ic_storm;
-        } else if (weatherId >= 951 && weatherId <= 957) {
-            return R.drawable.ic_clear;
-        }
+        int artId = getConditionResource(weatherId, COLUMN_SMALL_ART);
+        if (artId != 0) return artId;
 
         Log.e(LOG_TAG, "Unknown Weather: " + weatherId);
         return R.drawable.ic_storm;
@@ -366,41 +210,143 @@ public final class SunshineWeatherUtils {
      * @return resource id for the corresponding icon. -1 if no relation is found.
      */
     public static int getLargeArtResourceIdForWeatherCondition(int weatherId) {
-        /*
-         * Based on weather code data found at:
-         * http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
-         */
-        if (weatherId >= 200 && weatherId <= 232) {
-            return R.drawable.art_storm;
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            return R.drawable.art_light_rain;
-        } else if (weatherId >= 500 && weatherId <= 504) {
-            return R.drawable.art_rain;
-        } else if (weatherId == 511) {
-            return R.drawable.art_snow;
-        } else if (weatherId >= 520 && weatherId <= 531) {
-            return R.drawable.art_rain;
-        } else if (weatherId >= 600 && weatherId <= 622) {
-            return R.drawable.art_snow;
-        } else if (weatherId >= 701 && weatherId <= 761) {
-            return R.drawable.art_fog;
-        } else if (weatherId == 761 || weatherId == 771 || weatherId == 781) {
-            return R.drawable.art_storm;
-        } else if (weatherId == 800) {
-            return R.drawable.art_clear;
-        } else if (weatherId == 801) {
-            return R.drawable.art_light_clouds;
-        } else if (weatherId >= 802 && weatherId <= 804) {
-            return R.drawable.art_clouds;
-        } else if (weatherId >= 900 && weatherId <= 906) {
-            return R.drawable.art_storm;
-        } else if (weatherId >= 958 && weatherId <= 962) {
-            return R.drawable.art_storm;
-        } else if (weatherId >= 951 && weatherId <= 957) {
-            return R.drawable.art_clear;
-        }
+        int artId = getConditionResource(weatherId, COLUMN_LARGE_ART);
+        if (artId != 0) return artId;
 
         Log.e(LOG_TAG, "Unknown Weather: " + weatherId);
         return R.drawable.art_storm;
     }
-}
\ No newline at end of file
+
+    /**
+     * Reads a resource of a weather condition from {@link #CONDITION_TABLE}.
+     *
+     * @param weatherId from OpenWeatherMap API response
+     * @param column    One of the COLUMN_ constants.
+     * @return          The resource id, 0 if the condition is unknown.
+     */
+    private static int getConditionResource(int weatherId, int column) {
+        if (weatherId < MIN_WEATHER_ID || weatherId > MAX_WEATHER_ID) return 0;
+        return CONDITION_TABLE[(weatherId - MIN_WEATHER_ID) * CONDITION_COLUMNS + column];
+    }
+
+    /**
+     * Builds {@link #CONDITION_TABLE}. Based on weather code data found at:
+     * http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+     * <p/>
+     * Art ranges are listed in priority order, a range never overwrites an id that an earlier one
+     * already set. That is why 761 shows fog even though it is also listed with the storms.
+     */
+    private static int[] buildConditionTable() {
+        int[] table = new int[(MAX_WEATHER_ID - MIN_WEATHER_ID + 1) * CONDITION_COLUMNS];
+
+        // Descriptions.
+        fillConditionRange(table, COLUMN_STRING, 200, 232, R.string.condition_2xx);
+        fillConditionRange(table, COLUMN_STRING, 300, 321, R.string.condition_3xx);
+        int[] conditionStrings = {
+            500, R.string.condition_500,
+            501, R.string.condition_501,
+            502, R.string.condition_502,
+            503, R.string.condition_503,
+            504, R.string.condition_504,
+            511, R.string.condition_511,
+            520, R.string.condition_520,
+            531, R.string.condition_531,
+            600, R.string.condition_600,
+            601, R.string.condition_601,
+            602, R.string.condition_602,
+            611, R.string.condition_611,
+            612, R.string.condition_612,
+            615, R.string.condition_615,
+            616, R.string.condition_616,
+            620, R.string.condition_620,
+            621, R.string.condition_621,
+            622, R.string.condition_622,
+            701, R.string.condition_701,
+            711, R.string.condition_711,
+            721, R.string.condition_721,
+            731, R.string.condition_731,
+            741, R.string.condition_741,
+            751, R.string.condition_751,
+            761, R.string.condition_761,
+            762, R.string.condition_762,
+            771, R.string.condition_771,
+            781, R.string.condition_781,
+            800, R.string.condition_800,
+            801, R.string.condition_801,
+            802, R.string.condition_802,
+            803, R.string.condition_803,
+            804, R.string.condition_804,
+            900, R.string.condition_900,
+            901, R.string.condition_901,
+            902, R.string.condition_902,
+            903, R.string.condition_903,
+            904, R.string.condition_904,
+            905, R.string.condition_905,
+            906, R.string.condition_906,
+            951, R.string.condition_951,
+            952, R.string.condition_952,
+            953, R.string.condition_953,
+            954, R.string.condition_954,
+            955, R.string.condition_955,
+            956, R.string.condition_956,
+            957, R.string.condition_957,
+            958, R.string.condition_958,
+            959, R.string.condition_959,
+            960, R.string.condition_960,
+            961, R.string.condition_961,
+            962, R.string.condition_962
+        };
+        for (int i = 0; i < conditionStrings.length; i += 2) {
+            fillConditionRange(table, COLUMN_STRING,
+                    conditionStrings[i], conditionStrings[i], conditionStrings[i + 1]);
+        }
+
+        // Icons, small and large art of the same range are the same picture.
+        fillArtRange(table, 200, 232, R.drawable.ic_storm, R.drawable.art_storm);
+        fillArtRange(table, 300, 321, R.drawable.ic_light_rain, R.drawable.art_light_rain);
+        fillArtRange(table, 500, 504, R.drawable.ic_rain, R.drawable.art_rain);
+        fillArtRange(table, 511, 511, R.drawable.ic_snow, R.drawable.art_snow);
+        fillArtRange(table, 520, 531, R.drawable.ic_rain, R.drawable.art_rain);
+        fillArtRange(table, 600, 622, R.drawable.ic_snow, R.drawable.art_snow);
+        fillArtRange(table, 701, 761, R.drawable.ic_fog, R.drawable.art_fog);
+        fillArtRange(table, 761, 761, R.drawable.ic_storm, R.drawable.art_storm);
+        fillArtRange(table, 771, 771, R.drawable.ic_storm, R.drawable.art_storm);
+        fillArtRange(table, 781, 781, R.drawable.ic_storm, R.drawable.art_storm);
+        fillArtRange(table, 800, 800, R.drawable.ic_clear, R.drawable.art_clear);
+        fillArtRange(table, 801, 801, R.drawable.ic_light_clouds, R.drawable.art_light_clouds);
+        fillArtRange(table, 802, 804, R.drawable.ic_cloudy, R.drawable.art_clouds);
+        fillArtRange(table, 900, 906, R.drawable.ic_storm, R.drawable.art_storm);
+        fillArtRange(table, 958, 962, R.drawable.ic_storm, R.drawable.art_storm);
+        fillArtRange(table, 951, 957, R.drawable.ic_clear, R.drawable.art_clear);
+
+        return table;
+    }
+
+    private static void fillArtRange(int[] table, int fromId, int toId, int smallArtId,
+                                     int largeArtId) {
+        fillConditionRange(table, COLUMN_SMALL_ART, fromId, toId, smallArtId);
+        fillConditionRange(table, COLUMN_LARGE_ART, fromId, toId, largeArtId);
+    }
+
+    private static void fillConditionRange(int[] table, int column, int fromId, int toId,
+                                           int resourceId) {
+        for (int weatherId = fromId; weatherId <= toId; weatherId++) {
+            int index = (weatherId - MIN_WEATHER_ID) * CONDITION_COLUMNS + column;
+            if (table[index] == 0) {
+                table[index] = resourceId;
+            }
+        }
+    }
+
+    /**
+     * Descriptions resolved in one locale, filled in as they are first used.
+     */
+    private static final class ConditionStrings {
+        final Locale locale;
+        final String[] strings = new String[MAX_WEATHER_ID - MIN_WEATHER_ID + 1];
+
+        ConditionStrings(Locale locale) {
+            this.locale = locale;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.example.android.sunshine.utilities;
+
+import android.support.v4.os.TraceCompat;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Timings and counters of the stages of every sync, kept in an in-process ring buffer of the last
+ * {@link #MAX_SAMPLES} syncs and summarized as percentiles.
+ * <p/>
+ * Every stage is also a {@link TraceCompat} section named "Sync: " plus the stage, so syncs can be
+ * inspected with systrace. Locations are synced in parallel, the stage times of a sync are the
+ * sums over its locations, {@link #STAGE_TOTAL} is the wall time.
+ */
+public final class SyncMetrics {
+
+    private static final String TAG = SyncMetrics.class.getSimpleName();
+
+    // Stages, times in nanoseconds.
+    public static final int STAGE_URL_BUILD = 0;
+    public static final int STAGE_CONNECT = 1;
+    public static final int STAGE_FIRST_BYTE = 2;
+    public static final int STAGE_PARSE = 3;
+    public static final int STAGE_WRITE = 4;
+    public static final int STAGE_NOTIFICATION = 5;
+    public static final int STAGE_TOTAL = 6;
+
+    private static final String[] STAGE_NAMES = {
+            "Sync: url build",
+            "Sync: connect",
+            "Sync: first byte",
+            "Sync: parse",
+            "Sync: write",
+            "Sync: notification",
+            "Sync: total"
+    };
+
+    // Counters.
+    public static final int COUNTER_BODY_BYTES = 0;
+    public static final int COUNTER_ROWS_WRITTEN = 1;
+    public static final int COUNTER_NOTIFICATIONS = 2;
+
+    private static final String[] COUNTER_NAMES = {
+            "body bytes",
+            "rows written",
+            "notifications"
+    };
+
+    // Number of syncs kept for the summaries.
+    private static final int MAX_SAMPLES = 64;
+
+    private static final Sample[] sSamples = new Sample[MAX_SAMPLES];
+    private static int sNextSample;
+    private static int sSampleCount;
+
+    private SyncMetrics() {
+    }
+
+    /**
+     * Starts the sample of a sync. Must be finished on the same thread.
+     *
+     * @return The sample the stages of the sync are recorded in.
+     */
+    public static Sample startSync() {
+        Sample sample = new Sample();
+        sample.mTotalStart = sample.beginStage(STAGE_TOTAL);
+        return sample;
+    }
+
+    /**
+     * Records the wall time of a sync and adds its sample to the ring buffer.
+     *
+     * @param sample Sample returned by {@link #startSync()}.
+     */
+    public static void finishSync(Sample sample) {
+        sample.endStage(STAGE_TOTAL, sample.mTotalStart);
+        Log.d(TAG, sample.toString());
+
+        synchronized (SyncMetrics.class) {
+            sSamples[sNextSample] = sample;
+            sNextSample = (sNextSample + 1) % MAX_SAMPLES;
+            sSampleCount = Math.min(sSampleCount + 1, MAX_SAMPLES);
+        }
+    }
+
+    /**
+     * Returns the samples of the last syncs.
+     *
+     * @return Samples, oldest first.
+     */
+    public static synchronized List<Sample> getSamples() {
+        List<Sample> samples = new ArrayList<>(sSampleCount);
+        int first = (sNextSample - sSampleCount + MAX_SAMPLES) % MAX_SAMPLES;
+        for (int i = 0; i < sSampleCount; i++) {
+            samples.add(sSamples[(first + i) % MAX_SAMPLES]);
+        }
+        return samples;
+    }
+
+    /**
+     * Summarizes a stage over the last syncs.
+     *
+     * @param stage One of the STAGE constants.
+     * @return      Percentiles of the stage time in nanoseconds.
+     */
+    public static Summary getStageSummary(int stage) {
+        List<Sample> samples = getSamples();
+        long[] values = new long[samples.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = samples.get(i).getStageNanos(stage);
+        }
+        return new Summary(values);
+    }
+
+    /**
+     * Summarizes a counter over the last syncs.
+     *
+     * @param counter One of the COUNTER constants.
+     * @return        Percentiles of the counter.
+     */
+    public static Summary getCounterSummary(int counter) {
+        List<Sample> samples = getSamples();
+        long[] values = new long[samples.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = samples.get(i).getCounter(counter);
+        }
+        return new Summary(values);
+    }
+
+    /**
+     * Stage times and counters of one sync. Stages of different locations may be recorded from
+     * different threads at the same time.
+     */
+    public static final class Sample {
+        private final long mTimeMillis = System.currentTimeMillis();
+        private final AtomicLongArray mStageNanos = new AtomicLongArray(STAGE_NAMES.length);
+        private final AtomicLongArray mCounters = new AtomicLongArray(COUNTER_NAMES.length);
+
+        private long mTotalStart;
+
+        private Sample() {
+        }
+
+        /**
+         * Starts a stage and its trace section.
+         *
+         * @param stage One of the STAGE constants.
+         * @return      Start time to pass to {@link #endStage(int, long)}.
+         */
+        public long beginStage(int stage) {
+            TraceCompat.beginSection(STAGE_NAMES[stage]);
+            return System.nanoTime();
+        }
+
+        /**
+         * Ends a stage on the thread that started it.
+         *
+         * @param stage      One of the STAGE constants.
+         * @param startNanos Value returned by {@link #beginStage(int)}.
+         */
+        public void endStage(int stage, long startNanos) {
+            mStageNanos.addAndGet(stage, System.nanoTime() - startNanos);
+            TraceCompat.endSection();
+        }
+
+        /**
+         * @param counter One of the COUNTER constants.
+         * @param value   Added to the counter.
+         */
+        public void addCounter(int counter, long value) {
+            mCounters.addAndGet(counter, value);
+        }
+
+        /**
+         * @return Time the sync started, milliseconds since the epoch.
+         */
+        public long getTimeMillis() {
+            return mTimeMillis;
+        }
+
+        /**
+         * @param stage One of the STAGE constants.
+         * @return      Time spent in the stage in nanoseconds.
+         */
+        public long getStageNanos(int stage) {
+            return mStageNanos.get(stage);
+        }
+
+        /**
+         * @param counter One of the COUNTER constants.
+         * @return        Value of the counter.
+         */
+        public long getCounter(int counter) {
+            return mCounters.get(counter);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder("Sync");
+            for (int stage = 0; stage < STAGE_NAMES.length; stage++) {
+                builder.append(", ")
+                        .append(STAGE_NAMES[stage].substring("Sync: ".length()))
+                        .append(' ')
+                        .append(mStageNanos.get(stage) / 1000000)
+                        .append(" ms");
+            }
+            for (int counter = 0; counter < COUNTER_NAMES.length; counter++) {
+                builder.append(", ")
+                        .append(COUNTER_NAMES[counter])
+                        .append(' ')
+                        .append(mCounters.get(counter));
+            }
+            return builder.toString();
+        }
+    }
+
+    /**
+     * Percentiles of a value over the last syncs, nearest rank. All 0 if there was no sync.
+     */
+    public static final class Summary {
+        public final int count;
+        public final long p50;
+        public final long p95;
+        public final long p99;
+
+        Summary(long[] values) {
+            Arrays.sort(values);
+            count = values.length;
+            p50 = percentile(values, 50);
+            p95 = percentile(values, 95);
+            p99 = percentile(values, 99);
+        }
+
+        private static long percentile(long[] sortedValues, int percent) {
+            if (sortedValues.length == 0) return 0;
+            int rank = (sortedValues.length * percent + 99) / 100;
+            return sortedValues[Math.max(rank, 1) - 1];
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.android.sunshine.utilities;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * Drops everything derived from the time zone or the clock when either changes, so dates are
+ * shown and stored for the new zone.
+ * <p/>
+ * Both broadcasts are still delivered to manifest receivers from Android O on. The end of a day
+ * needs no broadcast, ZoneOffsetResolver and ForecastFormatCache notice it on their next call.
+ */
+public class TimeChangedReceiver extends BroadcastReceiver {
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        String action = intent.getAction();
+
+        if (Intent.ACTION_TIMEZONE_CHANGED.equals(action)
+                || Intent.ACTION_TIME_CHANGED.equals(action)) {
+            ZoneOffsetResolver.refresh();
+
+            // Receivers run on the main thread, the only thread using the format cache.
+            ForecastFormatCache.invalidate();
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.android.sunshine.utilities;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Opens connections to the weather server. Connections are kept alive in the connection pool of
+ * HttpURLConnection and TLS sessions are resumed from a shared session cache, so several requests
+ * in a row (one per location, retries) pay the TCP and TLS handshakes once.
+ * <p/>
+ * A connection only goes back to the pool when its body was read to the end and closed, so every
+ * connection opened with {@link #open(URL)} must be given back with
+ * {@link #release(HttpURLConnection, Reader)} instead of being disconnected.
+ */
+public final class WeatherHttpClient {
+
+    private static final String TAG = WeatherHttpClient.class.getSimpleName();
+
+    /** Connect timeout of the shared client. */
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 15 * 1000;
+
+    /** Read timeout of the shared client. */
+    public static final int DEFAULT_READ_TIMEOUT_MILLIS = 20 * 1000;
+
+    // Idle connections kept per host, enough for all locations synced at the same time.
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+
+    // TLS sessions to keep for resumption and how long they stay valid.
+    private static final int SSL_SESSION_CACHE_SIZE = 16;
+    private static final int SSL_SESSION_TIMEOUT_SECONDS = 60 * 60;
+
+    // Leftover body that is still worth reading to keep the connection, bigger ones are dropped.
+    private static final int MAX_DRAIN_CHARS = 64 * 1024;
+
+    private static WeatherHttpClient sInstance;
+
+    private final int mConnectTimeoutMillis;
+    private final int mReadTimeoutMillis;
+    private final SSLSocketFactory mSslSocketFactory;
+
+    /**
+     * Creates a client with its own TLS session cache. Most callers should use
+     * {@link #getInstance()} to share connections with the rest of the app.
+     *
+     * @param connectTimeoutMillis Timeout of establishing a connection.
+     * @param readTimeoutMillis    Timeout of waiting for data on an established connection.
+     */
+    public WeatherHttpClient(int connectTimeoutMillis, int readTimeoutMillis) {
+        mConnectTimeoutMillis = connectTimeoutMillis;
+        mReadTimeoutMillis = readTimeoutMillis;
+        mSslSocketFactory = createSslSocketFactory();
+    }
+
+    /**
+     * Returns the client shared by the app, with the default timeouts.
+     *
+     * @return The client.
+     */
+    public static synchronized WeatherHttpClient getInstance() {
+        if (sInstance == null) {
+            // Read by the HttpURLConnection pool when it is first used.
+            System.setProperty("http.keepAlive", "true");
+            System.setProperty("http.maxConnections", String.valueOf(MAX_IDLE_CONNECTIONS));
+
+            sInstance = new WeatherHttpClient(
+                    DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Opens a connection to the URL, an idle pooled connection to the same host is reused if
+     * there is one.
+     *
+     * @param url The URL to connect to.
+     * @return    Connection with timeouts set, not connected yet.
+     * @throws IOException Related to network
+     */
+    public HttpURLConnection open(URL url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(mConnectTimeoutMillis);
+        connection.setReadTimeout(mReadTimeoutMillis);
+        connection.setRequestProperty("Connection", "keep-alive");
+
+        // Connections are only pooled together if they use the same socket factory.
+        if (connection instanceof HttpsURLConnection && mSslSocketFactory != null) {
+            ((HttpsURLConnection) connection).setSSLSocketFactory(mSslSocketFactory);
+        }
+        return connection;
+    }
+
+    /**
+     * Gives a connection back to the pool. Whatever is left of the body is read and the body is
+     * closed, if that isn't possible the connection is disconnected instead.
+     *
+     * @param connection Connection opened with {@link #open(URL)}.
+     * @param body       Reader of the body the caller opened, null if the body wasn't opened.
+     */
+    public void release(HttpURLConnection connection, Reader body) {
+        try {
+            if (body != null) {
+                drainAndClose(body);
+            } else {
+                drainAndClose(connection);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Can't reuse connection to " + connection.getURL().getHost(), e);
+            connection.disconnect();
+        }
+    }
+
+    private static void drainAndClose(Reader body) throws IOException {
+        try {
+            char[] buffer = new char[1024];
+            int drained = 0;
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+                drained += read;
+                if (drained > MAX_DRAIN_CHARS) {
+                    throw new IOException("Response body is too long to drain");
+                }
+            }
+        } finally {
+            body.close();
+        }
+    }
+
+    private static void drainAndClose(HttpURLConnection connection) throws IOException {
+        InputStream body;
+        try {
+            body = connection.getInputStream();
+        } catch (IOException e) {
+            body = connection.getErrorStream();
+        }
+        if (body == null) return;
+
+        try {
+            byte[] buffer = new byte[1024];
+            int drained = 0;
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+                drained += read;
+                if (drained > MAX_DRAIN_CHARS) {
+                    throw new IOException("Response body is too long to drain");
+                }
+            }
+        } finally {
+            body.close();
+        }
+    }
+
+    /**
+     * Creates a socket factory with its own client session cache, so the sessions of this client
+     * are kept long enough to be resumed by the next sync.
+     *
+     * @return The factory, null if TLS can't be initialized and the default one has to be used.
+     */
+    private static SSLSocketFactory createSslSocketFactory() {
+        try {
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, null, null);
+
+            SSLSessionContext sessionContext = sslContext.getClientSessionContext();
+            if (sessionContext != null) {
+                sessionContext.setSessionCacheSize(SSL_SESSION_CACHE_SIZE);
+                sessionContext.setSessionTimeout(SSL_SESSION_TIMEOUT_SECONDS);
+            }
+            return sslContext.getSocketFactory();
+        } catch (GeneralSecurityException e) {
+            Log.w(TAG, "Can't create TLS context, using the default one", e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.android.sunshine.utilities;
+
+import java.util.Arrays;
+import java.util.TimeZone;
+
+/**
+ * Answers time zone offset and day number questions for the default time zone without calling
+ * {@link TimeZone#getDefault()}, which clones the zone on every call.
+ * <p/>
+ * The offsets are resolved once for a window around now that covers the stored forecast and its
+ * horizon. Daylight saving transitions inside the window are found and kept in a sorted array,
+ * so an offset is a binary search and the day number is plain arithmetic. Times outside the
+ * window fall back to the TimeZone. The window is rebuilt when it runs out and must be rebuilt
+ * with {@link #refresh()} when the default time zone changes, see {@link TimeChangedReceiver}.
+ */
+public final class ZoneOffsetResolver {
+
+    // Window around now the transitions are resolved for.
+    private static final long WINDOW_PAST_MILLIS = 30 * SunshineDateUtils.DAY_IN_MILLIS;
+    private static final long WINDOW_FUTURE_MILLIS = 60 * SunshineDateUtils.DAY_IN_MILLIS;
+
+    // Transitions are looked for by comparing offsets this far apart, then bisected.
+    private static final long SAMPLE_STEP_MILLIS = SunshineDateUtils.DAY_IN_MILLIS;
+
+    private static volatile Zone sZone;
+    private static volatile CurrentDay sCurrentDay;
+
+    private ZoneOffsetResolver() {
+    }
+
+    /**
+     * Same as TimeZone.getDefault().getOffset(time).
+     *
+     * @param time Milliseconds since the epoch.
+     * @return     Milliseconds to add to UTC to get local time.
+     */
+    public static int getOffset(long time) {
+        return getZone().getOffset(time);
+    }
+
+    /**
+     * Number of the local day that contains the time, days counted from the epoch.
+     *
+     * @param time Milliseconds since the epoch.
+     * @return     The day number.
+     */
+    public static long getDayNumber(long time) {
+        return (time + getOffset(time)) / SunshineDateUtils.DAY_IN_MILLIS;
+    }
+
+    /**
+     * Number of the current local day, only recomputed when the day ends.
+     *
+     * @return The day number of now.
+     */
+    public static long getCurrentDayNumber() {
+        long now = System.currentTimeMillis();
+        CurrentDay currentDay = sCurrentDay;
+        if (currentDay == null || now < currentDay.startMillis || now >= currentDay.endMillis) {
+            currentDay = new CurrentDay(now);
+            sCurrentDay = currentDay;
+        }
+        return currentDay.dayNumber;
+    }
+
+    /**
+     * Forgets everything resolved for the previous default time zone or clock.
+     */
+    public static void refresh() {
+        sZone = null;
+        sCurrentDay = null;
+    }
+
+    /**
+     * Returns the zone of the current default time zone, with its window rebuilt around now once
+     * now leaves it. Times outside the window are answered by the zone itself.
+     */
+    private static Zone getZone() {
+        Zone zone = sZone;
+        long now = System.currentTimeMillis();
+        if (zone == null || now < zone.windowStart || now >= zone.windowEnd) {
+            zone = new Zone(TimeZone.getDefault(), now);
+            sZone = zone;
+        }
+        return zone;
+    }
+
+    /**
+     * Offsets of one time zone inside a window, immutable.
+     */
+    private static final class Zone {
+        final TimeZone timeZone;
+        final long windowStart;
+        final long windowEnd;
+
+        // Offset in effect from transitions[i] to transitions[i + 1], offsets[0] from windowStart.
+        final long[] transitions;
+        final int[] offsets;
+
+        Zone(TimeZone timeZone, long now) {
+            this.timeZone = timeZone;
+            windowStart = now - WINDOW_PAST_MILLIS;
+            windowEnd = now + WINDOW_FUTURE_MILLIS;
+
+            long[] foundTransitions = new long[8];
+            int[] foundOffsets = new int[8];
+            int count = 0;
+
+            foundTransitions[count] = windowStart;
+            foundOffsets[count] = timeZone.getOffset(windowStart);
+            count++;
+
+            for (long sample = windowStart; sample < windowEnd; sample += SAMPLE_STEP_MILLIS) {
+                long next = Math.min(sample + SAMPLE_STEP_MILLIS, windowEnd);
+                int offset = foundOffsets[count - 1];
+                if (timeZone.getOffset(next) == offset) continue;
+
+                // Bisect to the first millisecond with the new offset.
+                long low = sample;
+                long high = next;
+                while (high - low > 1) {
+                    long middle = (low + high) >>> 1;
+                    if (timeZone.getOffset(middle) == offset) {
+                        low = middle;
+                    } else {
+                        high = middle;
+                    }
+                }
+
+                if (count == foundTransitions.length) {
+                    foundTransitions = Arrays.copyOf(foundTransitions, count * 2);
+                    foundOffsets = Arrays.copyOf(foundOffsets, count * 2);
+                }
+                foundTransitions[count] = high;
+                foundOffsets[count] = timeZone.getOffset(high);
+                count++;
+
+                // More than one transition between two samples is not possible in real zones,
+                // but continue from the one found so none is skipped.
+                sample = high - SAMPLE_STEP_MILLIS;
+            }
+
+            transitions = Arrays.copyOf(foundTransitions, count);
+            offsets = Arrays.copyOf(foundOffsets, count);
+        }
+
+        int getOffset(long time) {
+            if (time < windowStart || time >= windowEnd) {
+                return timeZone.getOffset(time);
+            }
+
+            int index = Arrays.binarySearch(transitions, time);
+            if (index < 0) {
+                // Insertion point minus one is the transition before the time.
+                index = -index - 2;
+            }
+            return offsets[index];
+        }
+    }
+
+    /**
+     * The current local day and the UTC times it starts and ends at.
+     */
+    private static final class CurrentDay {
+        final long dayNumber;
+        final long startMillis;
+        final long endMillis;
+
+        CurrentDay(long now) {
+            dayNumber = getDayNumber(now);
+
+            // Local midnights converted back to UTC with the offset in effect around them.
+            long localStart = dayNumber * SunshineDateUtils.DAY_IN_MILLIS;
+            long localEnd = localStart + SunshineDateUtils.DAY_IN_MILLIS;
+            startMillis = Math.min(now, localStart - getOffset(localStart - getOffset(now)));
+            endMillis = Math.max(now + 1, localEnd - getOffset(localEnd - getOffset(now)));
+        }
+    }
+}